@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.ParameterDefinition;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.jenkinsci.plugins.multilauncher.benchmark.Inventory;
+import org.jenkinsci.plugins.multilauncher.data.Launcher;
+import org.jenkinsci.plugins.multilauncher.data.LauncherParameterValue;
+import org.kohsuke.stapler.Stapler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Multi Launcher page rendering (calcParameterDefinitions) and form binding (newInstanceML).
+ * 
+ * Form binding needs a real stapler request: each invocation runs {@link #BINDINGS} bindings inside one request to the
+ * test instance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MultiLauncherActionBenchmark {
+	private static final int BINDINGS = 1000;
+
+	@Param({ "10", "40" })
+	public int parameters;
+
+	@Param({ "10", "150" })
+	public int launchers;
+
+	private Inventory inventory;
+
+	private MultiLauncherAction action;
+
+	private Launcher launcher;
+
+	private JSONObject form;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		inventory = new Inventory(1, launchers, parameters);
+		FreeStyleProject project = inventory.getProjects().get(0);
+		action = new MultiLauncherAction(project);
+		launcher = project.getProperty(MultiLauncher.class).getLaunchers().get(0);
+
+		JSONArray launchersData = new JSONArray();
+		for (Launcher l : project.getProperty(MultiLauncher.class).getLaunchers()) {
+			JSONArray values = new JSONArray();
+			for (LauncherParameterValue v : l.getParameter()) {
+				values.add(new JSONObject().element("name", v.getName()).element("value", v.getValue()));
+			}
+			launchersData.add(new JSONObject().element("id", l.getId()).element("cron", l.getCron())
+					.element("parameter", values));
+		}
+		form = new JSONObject().element("launchers", launchersData);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Throwable {
+		inventory.close();
+	}
+
+	@Benchmark
+	public List<ParameterDefinition> calcParameterDefinitions() throws Exception {
+		return action.calcParameterDefinitions(launcher);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BINDINGS)
+	public Object newInstanceML() throws Exception {
+		return inventory.getRule().executeOnServer(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				Object result = null;
+				for (int i = 0; i < BINDINGS; i++) {
+					result = action.newInstanceML(Stapler.getCurrentRequest(), form);
+				}
+				return result;
+			}
+		});
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.benchmark;
+
+import hudson.util.XStream2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.multilauncher.MultiLauncher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Load time of the launchers of a synthetic JENKINS_HOME (one MultiLauncher property per project), from the legacy
+ * format (one element per parameter value, migrated on load) and from the compact one.
+ * 
+ * Configuration size and retained heap are printed by {@link #main(String[])}, run with the test classpath of the
+ * benchmark profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConfigLoadBenchmark {
+	@Param({ "legacy", "compact" })
+	public String format;
+
+	@Param({ "1000" })
+	public int projects;
+
+	@Param({ "10" })
+	public int launchers;
+
+	@Param({ "30" })
+	public int parameters;
+
+	private final XStream2 xstream = new XStream2();
+
+	private List<String> configs;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		configs = configs(xstream, format, projects, launchers, parameters);
+	}
+
+	@Benchmark
+	public Object load() {
+		List<Object> loaded = new ArrayList<Object>(configs.size());
+		for (String xml : configs) {
+			loaded.add(xstream.fromXML(xml));
+		}
+		return loaded;
+	}
+
+	static List<String> configs(XStream2 xstream, String format, int projects, int launchers, int parameters) {
+		List<String> configs = new ArrayList<String>(projects);
+		for (int p = 0; p < projects; p++) {
+			MultiLauncher property = new MultiLauncher(Inventory.launchers(launchers, parameters));
+			configs.add("legacy".equals(format) ? legacy(property) : xstream.toXML(property));
+		}
+		return configs;
+	}
+
+	/**
+	 * XML written by the versions storing a list of parameter value objects.
+	 */
+	static String legacy(MultiLauncher property) {
+		StringBuilder xml = new StringBuilder("<org.jenkinsci.plugins.multilauncher.MultiLauncher>\n  <launchers>\n");
+		for (org.jenkinsci.plugins.multilauncher.data.Launcher l : property.getLaunchers()) {
+			xml.append("    <org.jenkinsci.plugins.multilauncher.data.Launcher>\n");
+			xml.append("      <id>").append(l.getId()).append("</id>\n");
+			xml.append("      <cron>").append(l.getCron()).append("</cron>\n");
+			xml.append("      <parameter>\n");
+			for (int i = 0; i < l.getParameters().size(); i++) {
+				xml.append("        <org.jenkinsci.plugins.multilauncher.data.LauncherParameterValue>\n");
+				xml.append("          <name>").append(l.getParameters().getName(i)).append("</name>\n");
+				xml.append("          <value>").append(l.getParameters().getValue(i)).append("</value>\n");
+				xml.append("        </org.jenkinsci.plugins.multilauncher.data.LauncherParameterValue>\n");
+			}
+			xml.append("      </parameter>\n");
+			xml.append("    </org.jenkinsci.plugins.multilauncher.data.Launcher>\n");
+		}
+		return xml.append("  </launchers>\n</org.jenkinsci.plugins.multilauncher.MultiLauncher>").toString();
+	}
+
+	/**
+	 * Print, for both formats, the configuration size and the heap retained by the loaded launchers.
+	 * 
+	 * @param args projects, launchers per project, parameters per launcher
+	 */
+	public static void main(String[] args) {
+		int projects = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int launchers = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int parameters = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+		XStream2 xstream = new XStream2();
+		for (String format : new String[] { "legacy", "compact" }) {
+			List<String> configs = configs(xstream, format, projects, launchers, parameters);
+			long bytes = 0;
+			for (String xml : configs) {
+				bytes += xml.length();
+			}
+			long before = usedHeap();
+			long start = System.nanoTime();
+			List<Object> loaded = new ArrayList<Object>(configs.size());
+			for (String xml : configs) {
+				loaded.add(xstream.fromXML(xml));
+			}
+			long millis = (System.nanoTime() - start) / 1000000;
+			long retained = usedHeap() - before;
+			System.out.printf("%-8s config %,d KB, load %,d ms, retained heap %,d KB (%d objects)%n", format,
+					bytes / 1024, millis, retained / 1024, loaded.size());
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
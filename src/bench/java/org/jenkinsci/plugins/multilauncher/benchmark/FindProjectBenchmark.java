@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.benchmark;
+
+import hudson.model.AbstractProject;
+
+import java.util.concurrent.TimeUnit;
+
+import jenkins.model.Jenkins;
+
+import org.jenkinsci.plugins.multilauncher.utils.ProjectIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Project lookup done by each fire (LauncherTrigger.findProject), against the linear scan it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FindProjectBenchmark {
+	@Param({ "100", "1000", "10000", "100000" })
+	public int projects;
+
+	private Inventory inventory;
+
+	private String[] names;
+
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		inventory = new Inventory(projects, 0, 0);
+		names = new String[projects];
+		for (int i = 0; i < projects; i++) {
+			names[i] = inventory.getProjects().get(i).getFullName();
+			ProjectIndex.put(inventory.getProjects().get(i));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Throwable {
+		ProjectIndex.clear();
+		inventory.close();
+	}
+
+	private String nextName() {
+		next = (next + 7919) % names.length;
+		return names[next];
+	}
+
+	@Benchmark
+	public AbstractProject<?, ?> index() {
+		return ProjectIndex.get(nextName());
+	}
+
+	@Benchmark
+	public AbstractProject<?, ?> linearScan() {
+		String name = nextName();
+		for (AbstractProject<?, ?> a : Jenkins.getInstance().getAllItems(AbstractProject.class)) {
+			if (name.equals(a.getFullName())) {
+				return a;
+			}
+		}
+		return null;
+	}
+}
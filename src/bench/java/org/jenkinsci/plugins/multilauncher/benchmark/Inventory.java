@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.benchmark;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.StringParameterDefinition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jenkinsci.plugins.multilauncher.MultiLauncher;
+import org.jenkinsci.plugins.multilauncher.data.Launcher;
+import org.jenkinsci.plugins.multilauncher.data.LauncherParameterValue;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.jvnet.hudson.test.JenkinsRule;
+
+/**
+ * Synthetic Jenkins instance shared by the benchmarks: projects with string parameters and launchers.
+ */
+public final class Inventory {
+	private final JenkinsRule rule = new JenkinsRule();
+
+	private final List<FreeStyleProject> projects = new ArrayList<FreeStyleProject>();
+
+	public Inventory(int projectCount, int launchersPerProject, int parametersPerProject) throws Throwable {
+		// JenkinsRule reads the test description in before(): apply() only records it.
+		rule.apply(new Statement() {
+			@Override
+			public void evaluate() {
+			}
+		}, Description.createTestDescription(Inventory.class, "inventory"));
+		rule.before();
+		for (int p = 0; p < projectCount; p++) {
+			FreeStyleProject project = rule.jenkins.createProject(FreeStyleProject.class, "project-" + p);
+			project.addProperty(new ParametersDefinitionProperty(parameterDefinitions(parametersPerProject)));
+			project.addProperty(new MultiLauncher(launchers(launchersPerProject, parametersPerProject)));
+			projects.add(project);
+		}
+	}
+
+	public static List<ParameterDefinition> parameterDefinitions(int count) {
+		List<ParameterDefinition> definitions = new ArrayList<ParameterDefinition>();
+		for (int i = 0; i < count; i++) {
+			definitions.add(new StringParameterDefinition("PARAM_" + i, "default-" + i, ""));
+		}
+		return definitions;
+	}
+
+	public static List<Launcher> launchers(int count, int parameters) {
+		List<Launcher> launchers = new ArrayList<Launcher>();
+		for (int l = 0; l < count; l++) {
+			List<LauncherParameterValue> values = new ArrayList<LauncherParameterValue>();
+			// Every other parameter is overridden by the launcher.
+			for (int i = 0; i < parameters; i += 2) {
+				values.add(new LauncherParameterValue("PARAM_" + i, "value-" + l + "-" + i));
+			}
+			launchers.add(new Launcher("0 " + (l % 60) + " 2 * * ?", "launcher-" + l, values));
+		}
+		return launchers;
+	}
+
+	public JenkinsRule getRule() {
+		return rule;
+	}
+
+	public List<FreeStyleProject> getProjects() {
+		return projects;
+	}
+
+	public void close() throws Throwable {
+		rule.after();
+	}
+}
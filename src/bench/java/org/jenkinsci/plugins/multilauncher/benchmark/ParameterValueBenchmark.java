@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.benchmark;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersDefinitionProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.multilauncher.MultiLauncher;
+import org.jenkinsci.plugins.multilauncher.data.Launcher;
+import org.jenkinsci.plugins.multilauncher.data.LauncherParameterValue;
+import org.jenkinsci.plugins.multilauncher.utils.LauncherParameters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Parameter values of a fire (LauncherTrigger.buildParameterValue): cached values against a full resolution, and
+ * cached values with every overridden value computed from a <code>${...}</code> template.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ParameterValueBenchmark {
+	@Param({ "10", "60", "200" })
+	public int parameters;
+
+	private Inventory inventory;
+
+	private FreeStyleProject project;
+
+	private MultiLauncher property;
+
+	private Launcher launcher;
+
+	private LauncherParameters templated;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		inventory = new Inventory(1, 1, parameters);
+		project = inventory.getProjects().get(0);
+		property = project.getProperty(MultiLauncher.class);
+		launcher = property.getLaunchers().get(0);
+
+		List<LauncherParameterValue> values = new ArrayList<LauncherParameterValue>();
+		for (int i = 0; i < parameters; i += 2) {
+			values.add(new LauncherParameterValue("PARAM_" + i, "${date-1d:yyyyMMdd}-${launcher}-" + i));
+		}
+		templated = LauncherParameters.compile(project.getProperty(ParametersDefinitionProperty.class), project
+				.getFullName(), new Launcher("0 0 2 * * ?", "templated", values));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Throwable {
+		inventory.close();
+	}
+
+	@Benchmark
+	public Object cached() {
+		return property.getParameters(project, launcher).evaluate(project.getFullName(), launcher.getId(), 0);
+	}
+
+	@Benchmark
+	public Object templated() {
+		return templated.evaluate(project.getFullName(), "templated", 0);
+	}
+
+	@Benchmark
+	public Object compiled() {
+		return LauncherParameters.compile(project.getProperty(ParametersDefinitionProperty.class),
+				project.getFullName(), launcher).getValues();
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.multilauncher.utils.LauncherKey;
+import org.jenkinsci.plugins.multilauncher.utils.LauncherScheduler;
+import org.jenkinsci.plugins.multilauncher.utils.SchedulerEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Registering and removing every launcher of an inventory (startup registration, project saves), for each scheduler
+ * engine. Run with <code>-prof gc</code> to compare allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SchedulerBenchmark {
+	@Param({ "QUARTZ", "BUILTIN" })
+	public SchedulerEngine engine;
+
+	@Param({ "100", "1000", "10000", "100000" })
+	public int launchers;
+
+	private LauncherScheduler scheduler;
+
+	private Map<LauncherKey, String> crons;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		crons = new HashMap<LauncherKey, String>();
+		for (int i = 0; i < launchers; i++) {
+			crons.put(new LauncherKey("folder-" + (i % 100) + "/project-" + (i / 10), "launcher-" + (i % 10)), "0 "
+					+ (i % 60) + " " + (i % 24) + " * * ?");
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void start() {
+		scheduler = engine.create(1);
+	}
+
+	@TearDown(Level.Invocation)
+	public void stop() {
+		scheduler.shutdown();
+	}
+
+	@Benchmark
+	public int registerAndRemove() {
+		scheduler.schedule(crons);
+		int size = scheduler.size();
+		scheduler.unschedule(crons.keySet());
+		return size;
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher;
+
+import hudson.Extension;
+import hudson.cli.CLICommand;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * <code>java -jar jenkins-cli.jar multi-launcher-bulk &lt; request.json</code>: CLI flavour of
+ * {@link LauncherBulkUpdate}. Exits with 1 if any project failed.
+ */
+@Extension
+public class BulkLauncherCommand extends CLICommand {
+
+	@Override
+	public String getName() {
+		return "multi-launcher-bulk";
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Change the multi-launcher launchers of many projects, reading a JSON request on stdin.";
+	}
+
+	@Override
+	protected int run() throws Exception {
+		JSONObject result = LauncherBulkUpdate.apply(JSONObject.fromObject(IOUtils.toString(stdin, "UTF-8")));
+		stdout.println(result.toString(2));
+		return result.getInt("failed") == 0 ? 0 : 1;
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher;
+
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Descriptor.FormException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.jenkinsci.plugins.multilauncher.data.ConcurrencyPolicy;
+import org.jenkinsci.plugins.multilauncher.data.Launcher;
+import org.jenkinsci.plugins.multilauncher.data.LauncherAxis;
+import org.jenkinsci.plugins.multilauncher.data.LauncherParameterValue;
+import org.jenkinsci.plugins.multilauncher.data.LauncherPriority;
+import org.jenkinsci.plugins.multilauncher.data.MisfirePolicy;
+import org.jenkinsci.plugins.multilauncher.utils.LauncherTrigger;
+import org.jenkinsci.plugins.multilauncher.utils.ProjectIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Change the launchers of many projects in one request.
+ * 
+ * <pre>
+ * {"dryRun": false,
+ *  "projects": [
+ *    {"project": "folder/job",
+ *     "replace": false,
+ *     "launchers": [{"id": "nightly", "cron": "0 H 2 * * ?", "misfirePolicy": "SKIP",
+ *                    "concurrencyPolicy": "ALLOW", "priority": "HIGH", "parameters": {"BRANCH": "master"}},
+ *                   {"id": "weekly", "template": "weekly-default"},
+ *                   {"id": "suite", "cron": "0 0 3 * * ?", "axes": {"PLATFORM": "linux windows", "LOCALE": "en fr"},
+ *                    "exclude": "PLATFORM=windows,LOCALE=fr"}],
+ *     "remove": ["old"],
+ *     "parameters": {"BRANCH": "main"}}]}
+ * </pre>
+ * 
+ * For each project, the given launchers replace the existing ones with the same id (all of them when
+ * <code>replace</code> is set), the <code>remove</code> ids are dropped and the <code>parameters</code> values are
+ * set on every resulting launcher.
+ * 
+ * Every project is validated before anything is written. A project with an error is reported and left untouched,
+ * the others have their configuration written once, and the scheduler is updated once for all of them.
+ */
+public final class LauncherBulkUpdate {
+	private static final Logger LOG = LoggerFactory.getLogger(LauncherBulkUpdate.class);
+
+	private LauncherBulkUpdate() {
+	}
+
+	/**
+	 * @return <code>{"dryRun": ..., "updated": n, "failed": n, "scheduled": n, "results": {project: {"status":
+	 *         "ok"|"error", ...}}}</code>
+	 */
+	public static JSONObject apply(JSONObject request) {
+		boolean dryRun = request.optBoolean("dryRun", false);
+		JSONArray operations = request.optJSONArray("projects");
+		if (operations == null) {
+			operations = new JSONArray();
+		}
+
+		Map<String, JSONObject> results = new LinkedHashMap<String, JSONObject>();
+		Map<AbstractProject<?, ?>, MultiLauncher> valid = new LinkedHashMap<AbstractProject<?, ?>, MultiLauncher>();
+
+		// Validate everything first.
+		for (int i = 0; i < operations.size(); i++) {
+			JSONObject operation = operations.getJSONObject(i);
+			String name = operation.optString("project", null);
+			if (name == null) {
+				results.put("#" + i, error("Missing project name"));
+				continue;
+			}
+			if (results.containsKey(name)) {
+				results.put(name, error("Project listed more than once"));
+				continue;
+			}
+			AbstractProject<?, ?> project = ProjectIndex.get(name);
+			if (project == null || !project.hasPermission(Item.READ)) {
+				results.put(name, error("No such project"));
+				continue;
+			}
+			if (!project.hasPermission(Item.CONFIGURE)) {
+				results.put(name, error("Missing the " + Item.CONFIGURE.name + " permission"));
+				continue;
+			}
+			try {
+				MultiLauncher property = new MultiLauncherAction(project).validate(launchers(project, operation));
+				valid.put(project, property);
+				results.put(name, new JSONObject().element("status", "ok").element("launchers",
+						property.getLaunchers().size()));
+			} catch (FormException e) {
+				results.put(name, error(e.getMessage()));
+			} catch (IllegalArgumentException e) {
+				results.put(name, error(e.getMessage()));
+			}
+		}
+
+		// Then write each project once, and update the scheduler once.
+		List<AbstractProject<?, ?>> updated = new ArrayList<AbstractProject<?, ?>>();
+		if (!dryRun) {
+			for (Map.Entry<AbstractProject<?, ?>, MultiLauncher> e : valid.entrySet()) {
+				AbstractProject<?, ?> project = e.getKey();
+				try {
+					synchronized (project) {
+						MultiLauncherAction.replaceProperty(project, e.getValue());
+					}
+					updated.add(project);
+				} catch (IOException ex) {
+					LOG.error("Cannot save launchers of " + project.getFullName(), ex);
+					results.put(project.getFullName(), error("Cannot save: " + ex.getMessage()));
+				}
+			}
+		}
+		int scheduled = LauncherTrigger.updateAll(updated);
+
+		JSONObject byProject = new JSONObject();
+		int failed = 0;
+		for (Map.Entry<String, JSONObject> e : results.entrySet()) {
+			if ("error".equals(e.getValue().getString("status"))) {
+				failed++;
+			}
+			byProject.element(e.getKey(), e.getValue());
+		}
+		return new JSONObject().element("dryRun", dryRun).element("updated", updated.size())
+				.element("failed", failed).element("scheduled", scheduled).element("results", byProject);
+	}
+
+	/**
+	 * @return the launchers of the project once the operation is applied, the current ones left as they are
+	 */
+	private static List<Launcher> launchers(AbstractProject<?, ?> project, JSONObject operation) {
+		Map<String, Launcher> launchers = new LinkedHashMap<String, Launcher>();
+		MultiLauncher current = project.getProperty(MultiLauncher.class);
+		if (current != null && current.getLaunchers() != null && !operation.optBoolean("replace", false)) {
+			for (Launcher l : current.getLaunchers()) {
+				launchers.put(l.getId(), l);
+			}
+		}
+
+		JSONArray given = operation.optJSONArray("launchers");
+		if (given != null) {
+			for (int i = 0; i < given.size(); i++) {
+				Launcher l = parse(given.getJSONObject(i));
+				launchers.remove(l.getId());
+				launchers.put(l.getId(), l);
+			}
+		}
+
+		JSONArray remove = operation.optJSONArray("remove");
+		if (remove != null) {
+			for (int i = 0; i < remove.size(); i++) {
+				launchers.remove(remove.getString(i));
+			}
+		}
+
+		JSONObject parameters = operation.optJSONObject("parameters");
+		if (parameters != null && !parameters.isNullObject()) {
+			for (Map.Entry<String, Launcher> e : launchers.entrySet()) {
+				e.setValue(withParameters(e.getValue(), parameters));
+			}
+		}
+		return new ArrayList<Launcher>(launchers.values());
+	}
+
+	private static Launcher parse(JSONObject json) {
+		MisfirePolicy misfirePolicy = json.has("misfirePolicy") ? MisfirePolicy.valueOf(json
+				.getString("misfirePolicy")) : null;
+		ConcurrencyPolicy concurrencyPolicy = json.has("concurrencyPolicy") ? ConcurrencyPolicy.valueOf(json
+				.getString("concurrencyPolicy")) : null;
+		LauncherPriority priority = json.has("priority") ? LauncherPriority.valueOf(json.getString("priority")) : null;
+		List<LauncherAxis> list = null;
+		JSONObject axes = json.optJSONObject("axes");
+		if (axes != null && !axes.isNullObject()) {
+			list = new ArrayList<LauncherAxis>();
+			for (Object name : axes.keySet()) {
+				list.add(new LauncherAxis((String) name, axes.getString((String) name)));
+			}
+		}
+		Launcher l = new Launcher(json.optString("cron", null), json.optString("id", null),
+				new ArrayList<LauncherParameterValue>(), misfirePolicy, concurrencyPolicy, priority, list,
+				json.optString("include", null), json.optString("exclude", null), json.optString("template", null));
+		JSONObject parameters = json.optJSONObject("parameters");
+		if (parameters != null && !parameters.isNullObject()) {
+			l = withParameters(l, parameters);
+		}
+		return l;
+	}
+
+	private static Launcher withParameters(Launcher l, JSONObject parameters) {
+		// Later values replace the earlier ones with the same name.
+		List<LauncherParameterValue> values = new ArrayList<LauncherParameterValue>(l.getParameter());
+		@SuppressWarnings("unchecked")
+		Iterator<String> names = parameters.keys();
+		while (names.hasNext()) {
+			String name = names.next();
+			values.add(new LauncherParameterValue(name, parameters.getString(name)));
+		}
+		return l.withParameters(values);
+	}
+
+	private static JSONObject error(String message) {
+		return new JSONObject().element("status", "error").element("message", message);
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher;
+
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.ParameterDefinition;
+import hudson.model.Descriptor.FormException;
+import hudson.util.FormApply;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletException;
+
+import net.sf.json.JSONObject;
+
+import org.jenkinsci.plugins.multilauncher.data.Launcher;
+import org.jenkinsci.plugins.multilauncher.utils.LauncherTrigger;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * Page editing a single launcher of a project, so that only its parameters are rendered and only it is submitted.
+ */
+public class LauncherEditor {
+	private final MultiLauncherAction action;
+
+	/**
+	 * Null for a new launcher.
+	 */
+	private final Launcher launcher;
+
+	LauncherEditor(MultiLauncherAction action, Launcher launcher) {
+		this.action = action;
+		this.launcher = launcher;
+	}
+
+	public MultiLauncherAction getAction() {
+		return action;
+	}
+
+	public Launcher getLauncher() {
+		return launcher;
+	}
+
+	public List<ParameterDefinition> getParameterDefinitions() throws IOException, InterruptedException {
+		return launcher == null ? action.getParameterDefinitions() : action.getParameterDefinitions(launcher);
+	}
+
+	@RequirePOST
+	public void doSave(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException, FormException {
+		AbstractProject<?, ?> target = action.getTarget();
+		target.checkPermission(Item.CONFIGURE);
+		Launcher edited = req.bindJSON(Launcher.class, req.getSubmittedForm());
+		apply(target, edited);
+		FormApply.success(req.getContextPath() + "/" + target.getUrl() + action.getUrlName() + "/")
+				.generateResponse(req, rsp, this);
+	}
+
+	@RequirePOST
+	public void doDelete(StaplerRequest req, StaplerResponse rsp) throws IOException, FormException {
+		AbstractProject<?, ?> target = action.getTarget();
+		target.checkPermission(Item.CONFIGURE);
+		apply(target, null);
+		rsp.sendRedirect2(req.getContextPath() + "/" + target.getUrl() + action.getUrlName() + "/");
+	}
+
+	/**
+	 * Replace this launcher by the edited one (remove it when null), leaving the other launchers untouched.
+	 */
+	private void apply(AbstractProject<?, ?> target, Launcher edited) throws IOException, FormException {
+		synchronized (target) {
+			List<Launcher> launchers = new ArrayList<Launcher>();
+			boolean replaced = false;
+			for (Launcher l : action.getLaunchers()) {
+				if (launcher != null && l.getId() != null && l.getId().equals(launcher.getId())) {
+					if (edited != null) {
+						launchers.add(edited);
+					}
+					replaced = true;
+				} else {
+					launchers.add(l);
+				}
+			}
+			if (!replaced && edited != null) {
+				launchers.add(edited);
+			}
+			MultiLauncherAction.replaceProperty(target, action.validate(launchers));
+		}
+		LauncherTrigger.update(target);
+	}
+}
@@ -26,23 +26,127 @@ package org.jenkinsci.plugins.multilauncher;
 
 import hudson.model.JobProperty;
 import hudson.model.Job;
+import hudson.model.ParametersDefinitionProperty;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.jenkinsci.plugins.multilauncher.data.Launcher;
+import org.jenkinsci.plugins.multilauncher.utils.LauncherParameters;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 public class MultiLauncher extends JobProperty<Job<?, ?>> {
-	private final List<Launcher> launchers;
+	/**
+	 * Stored as an array: same XML as the list it replaces, without its spare capacity.
+	 */
+	private Launcher[] launchers;
+
+	private transient volatile Resolved resolved;
 
 	@DataBoundConstructor
 	public MultiLauncher(List<Launcher> launchers) {
-		this.launchers = new ArrayList<Launcher>(launchers);
+		this.launchers = launchers.toArray(new Launcher[launchers.size()]);
+	}
+
+	private Object readResolve() {
+		if (launchers == null) {
+			launchers = new Launcher[0];
+		}
+		return this;
 	}
 
+	/**
+	 * @return read only view of the launchers
+	 */
 	public List<Launcher> getLaunchers() {
-		return launchers;
+		return Collections.unmodifiableList(Arrays.asList(launchers));
+	}
+
+	/**
+	 * Launchers as they run, completed by their templates.
+	 */
+	public List<Launcher> getResolvedLaunchers() {
+		return resolve().launchers;
+	}
+
+	/**
+	 * @return whether a launcher inherits from a global template
+	 */
+	public boolean usesTemplates() {
+		return resolve().templates;
+	}
+
+	/**
+	 * What the scheduler depends on: cron expression by launcher id, once templates are applied. Two properties with
+	 * equal maps lead to the same triggers.
+	 */
+	public Map<String, String> getCrons() {
+		return resolve().crons;
+	}
+
+	/**
+	 * Resolved on first use and again when the templates change.
+	 */
+	private Resolved resolve() {
+		long version = getDescriptor().getTemplatesVersion();
+		Resolved r = resolved;
+		if (r == null || r.version != version) {
+			r = new Resolved(version, getLaunchers(), getDescriptor());
+			resolved = r;
+		}
+		return r;
+	}
+
+	/**
+	 * Parameter values of the launcher, resolved on first use and again only when the parameter definitions of the
+	 * project, its name or the templates change.
+	 */
+	public LauncherParameters getParameters(Job<?, ?> project, Launcher launcher) {
+		ConcurrentMap<String, LauncherParameters> cache = resolve().parameters;
+
+		ParametersDefinitionProperty definitions = project.getProperty(ParametersDefinitionProperty.class);
+		LauncherParameters compiled = cache.get(launcher.getId());
+		if (compiled == null || !compiled.isCompiledFor(definitions, project.getFullName())) {
+			compiled = LauncherParameters.compile(definitions, project.getFullName(),
+					getDescriptor().resolve(launcher));
+			cache.put(launcher.getId(), compiled);
+		}
+		return compiled;
+	}
+
+	private static final class Resolved {
+		private final long version;
+		private final List<Launcher> launchers;
+		private final boolean templates;
+		private final Map<String, String> crons;
+
+		/**
+		 * Parameter values by launcher id. The property is replaced on each save and the resolution is done again
+		 * when the templates change, which both drop this cache.
+		 */
+		private final ConcurrentMap<String, LauncherParameters> parameters = new ConcurrentHashMap<String, LauncherParameters>();
+
+		private Resolved(long version, List<Launcher> launchers, MultiLauncherDescriptor descriptor) {
+			List<Launcher> list = new ArrayList<Launcher>(launchers.size());
+			boolean t = false;
+			Map<String, String> c = new LinkedHashMap<String, String>();
+			for (Launcher l : launchers) {
+				Launcher r = descriptor.resolve(l);
+				list.add(r);
+				t |= l.getTemplate() != null;
+				c.put(r.getId(), r.getCron());
+			}
+			this.version = version;
+			this.launchers = Collections.unmodifiableList(list);
+			this.templates = t;
+			this.crons = Collections.unmodifiableMap(c);
+		}
 	}
 
 
@@ -1,34 +1,56 @@
 package org.jenkinsci.plugins.multilauncher;
 
+import hudson.BulkChange;
 import hudson.model.Action;
 import hudson.model.AbstractProject;
 import hudson.model.Descriptor.FormException;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParametersDefinitionProperty;
-import hudson.model.listeners.ItemListener;
 import hudson.util.FormApply;
 import hudson.util.FormValidation;
 import hudson.util.FormValidation.Kind;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.servlet.ServletException;
 
+import jenkins.model.Jenkins;
 import net.sf.json.JSON;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 
+import org.jenkinsci.plugins.multilauncher.data.ConcurrencyPolicy;
 import org.jenkinsci.plugins.multilauncher.data.Launcher;
-import org.jenkinsci.plugins.multilauncher.data.LauncherParameterValue;
+import org.jenkinsci.plugins.multilauncher.data.LauncherAxis;
+import org.jenkinsci.plugins.multilauncher.data.LauncherPriority;
+import org.jenkinsci.plugins.multilauncher.data.MisfirePolicy;
+import org.jenkinsci.plugins.multilauncher.utils.FireCalendar;
+import org.jenkinsci.plugins.multilauncher.utils.FireHistory;
+import org.jenkinsci.plugins.multilauncher.utils.HashedCron;
+import org.jenkinsci.plugins.multilauncher.utils.LauncherKey;
+import org.jenkinsci.plugins.multilauncher.utils.LauncherParameters;
+import org.jenkinsci.plugins.multilauncher.utils.LauncherTrigger;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
 public class MultiLauncherAction implements Action {
+	/**
+	 * Launchers listed per page on the summary page: their editors are only rendered on demand.
+	 */
+	public static final int PAGE_SIZE = 50;
+
+	/**
+	 * Last runs of each launcher shown on the summary page.
+	 */
+	public static final int RECENT_RUNS = 5;
+
 	private final AbstractProject<?, ?> target;
 
 	public MultiLauncherAction(final AbstractProject<?, ?> target) {
@@ -70,6 +92,107 @@ public class MultiLauncherAction implements Action {
 		return new ArrayList<Launcher>();
 	}
 
+	/**
+	 * Launchers of the summary page, a page at a time.
+	 * 
+	 * @param page page number, from 0
+	 */
+	public List<Launcher> getLauncherPage(int page) {
+		List<Launcher> launchers = getLaunchers();
+		int from = Math.min(Math.max(page, 0) * PAGE_SIZE, launchers.size());
+		return launchers.subList(from, Math.min(from + PAGE_SIZE, launchers.size()));
+	}
+
+	public int getPageCount() {
+		return (getLaunchers().size() + PAGE_SIZE - 1) / PAGE_SIZE;
+	}
+
+	public static int parsePage(String page) {
+		try {
+			return page == null ? 0 : Math.max(0, Integer.parseInt(page));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return next fire of the launcher, or null if it is not scheduled
+	 */
+	public Date getNextFire(Launcher l) {
+		long next = FireCalendar.get().getNextFire(new LauncherKey(target.getFullName(), l.getId()));
+		return next == 0 ? null : new Date(next);
+	}
+
+	/**
+	 * @return last runs of the launcher, most recent first, read from the fire history rather than the builds
+	 */
+	public List<FireHistory.Entry> getRecentRuns(Launcher l) {
+		List<FireHistory.Entry> entries = FireHistory.get().getEntries(new LauncherKey(target.getFullName(), l.getId()));
+		return entries.subList(0, Math.min(RECENT_RUNS, entries.size()));
+	}
+
+	/**
+	 * Recent runs of every launcher of the project, or of the <code>launcher</code> parameter only, as JSON.
+	 */
+	public void doHistory(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		String only = req.getParameter("launcher");
+		JSONObject launchers = new JSONObject();
+		for (Launcher l : getLaunchers()) {
+			if (only != null && !only.equals(l.getId())) {
+				continue;
+			}
+			JSONArray runs = new JSONArray();
+			for (FireHistory.Entry e : FireHistory.get().getEntries(new LauncherKey(target.getFullName(), l.getId()))) {
+				runs.add(e.toJSON());
+			}
+			launchers.element(l.getId(), runs);
+		}
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.getWriter().print(new JSONObject().element("project", target.getFullName()).element("launchers", launchers));
+	}
+
+	/**
+	 * Editor of a single launcher, at <code>launcher/&lt;id&gt;/</code>.
+	 */
+	public LauncherEditor getLauncher(String id) {
+		for (Launcher l : getLaunchers()) {
+			if (id.equals(l.getId())) {
+				return new LauncherEditor(this, l);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Editor of a launcher to add, at <code>newLauncher/</code>.
+	 */
+	public LauncherEditor getNewLauncher() {
+		return new LauncherEditor(this, null);
+	}
+
+	public MultiLauncherDescriptor getDescriptor() {
+		return Jenkins.getInstance().getDescriptorByType(MultiLauncherDescriptor.class);
+	}
+
+	/**
+	 * Global templates a launcher may inherit from.
+	 */
+	public List<Launcher> getTemplates() {
+		return getDescriptor().getTemplates();
+	}
+
+	public MisfirePolicy[] getMisfirePolicies() {
+		return MisfirePolicy.values();
+	}
+
+	public ConcurrencyPolicy[] getConcurrencyPolicies() {
+		return ConcurrencyPolicy.values();
+	}
+
+	public LauncherPriority[] getPriorities() {
+		return LauncherPriority.values();
+	}
+
 	public List<ParameterDefinition> getParameterDefinitions(Launcher l) throws IOException, InterruptedException {
 		MultiLauncher property = target.getProperty(MultiLauncher.class);
 		if (property != null && property.getLaunchers() != null) {
@@ -78,24 +201,21 @@ public class MultiLauncherAction implements Action {
 		return getParameterDefinitions();
 	}
 
-	private List<ParameterDefinition> calcParameterDefinitions(Launcher l) throws IOException, InterruptedException {
+	List<ParameterDefinition> calcParameterDefinitions(Launcher l) throws IOException, InterruptedException {
 		List<ParameterDefinition> definitions = getParameterDefinitions();
-		if (l == null || l.getParameter() == null || l.getParameter().isEmpty()) {
+		if (l != null) {
+			l = getDescriptor().resolve(l);
+		}
+		if (l == null || l.getParameters().isEmpty()) {
 			return definitions;
 		}
 
 		List<ParameterDefinition> modifiedOne = new ArrayList<ParameterDefinition>();
-		boolean found = false;
 		for (ParameterDefinition p : definitions) {
-			found = false;
-			for (LauncherParameterValue v : l.getParameter()) {
-				if (v.getName().equals(p.getName())) {
-					modifiedOne.add(p.copyWithDefaultValue(p.createValue(null, v.getValue())));
-					found = true;
-					break;
-				}
-			}
-			if (!found) {
+			int i = l.getParameters().indexOf(p.getName());
+			if (i >= 0) {
+				modifiedOne.add(p.copyWithDefaultValue(p.createValue(null, l.getParameters().getValue(i))));
+			} else {
 				modifiedOne.add(p);
 			}
 		}
@@ -106,13 +226,11 @@ public class MultiLauncherAction implements Action {
 		JSONObject json = req.getSubmittedForm();
 		MultiLauncher desc = newInstanceML(req, json);
 
-		MultiLauncher property = target.getProperty(MultiLauncher.class);
-		target.removeProperty(property);
-		if (desc != null) {
-			target.addProperty(desc);
+		synchronized (target) {
+			replaceProperty(target, desc);
 		}
-		target.save();
-		ItemListener.fireOnUpdated(target);
+		// Only the launchers changed: no need to notify every item listener.
+		LauncherTrigger.update(target);
 	    // Redirect to the plugin index page
 		FormApply.success("..").generateResponse(req, rsp, this);
 	}
@@ -132,12 +250,50 @@ public class MultiLauncherAction implements Action {
 			}
 		}
 
+		return validate(launchers);
+	}
+
+	/**
+	 * Replace the launchers of the project, writing its configuration once.
+	 */
+	static void replaceProperty(AbstractProject<?, ?> project, MultiLauncher desc) throws IOException {
+		BulkChange bc = new BulkChange(project);
+		try {
+			MultiLauncher property = project.getProperty(MultiLauncher.class);
+			project.removeProperty(property);
+			if (desc != null) {
+				project.addProperty(desc);
+			}
+			bc.commit();
+		} finally {
+			bc.abort();
+		}
+	}
+
+	/**
+	 * @return the property holding the launchers, once their crons, ids and parameter values are checked
+	 */
+	MultiLauncher validate(List<Launcher> launchers) throws FormException {
 		Set<String> ids = new HashSet<String>();
+		List<Launcher> stored = new ArrayList<Launcher>(launchers.size());
 
 		for (int i = 0; i < launchers.size(); i++) {
 			Launcher l = launchers.get(i);
 
-			FormValidation fc = doCheckCron(l.getCron());
+			// A launcher using a template only keeps what it overrides, and is checked as it will run.
+			if (l.getTemplate() != null) {
+				Launcher template = getDescriptor().getTemplate(l.getTemplate());
+				if (template == null) {
+					throw new FormException(Messages.multilauncher_form_template_error(l.getTemplate()), "template."
+							+ i);
+				}
+				stored.add(l.overridesOf(template));
+				l = l.inherit(template);
+			} else {
+				stored.add(l);
+			}
+
+			FormValidation fc = checkCron(l.getCron(), l.getId());
 			if (fc.kind != Kind.OK) {
 				throw new FormException(Messages.multilauncher_form_cron_error(l.getCron()), "cron." + i);
 			}
@@ -149,23 +305,67 @@ public class MultiLauncherAction implements Action {
 				throw new FormException(Messages.multilauncher_form_id_duplicate(l.getId()), "id." + i);
 			}
 			ids.add(l.getId());
+
+			Set<String> axes = new HashSet<String>();
+			for (LauncherAxis axis : l.getAxes()) {
+				if (axis.getName() == null || axis.getName().length() == 0 || axis.size() == 0
+						|| !axes.add(axis.getName())) {
+					throw new FormException(Messages.multilauncher_form_axis_error(axis.getName(), l.getId()), "axes."
+							+ i);
+				}
+			}
+
+			ParametersDefinitionProperty definitions = target.getProperty(ParametersDefinitionProperty.class);
+			Map<String, String> errors = LauncherParameters.compile(definitions, target.getFullName(), l).getErrors();
+			if (!errors.isEmpty()) {
+				Map.Entry<String, String> error = errors.entrySet().iterator().next();
+				throw new FormException(Messages.multilauncher_form_parameter_error(error.getKey(), l.getId(),
+						error.getValue()), error.getKey());
+			}
 		}
 
-		MultiLauncher notificationProperty = new MultiLauncher(launchers);
+		MultiLauncher notificationProperty = new MultiLauncher(stored);
 		return notificationProperty;
 	}
 
-	public FormValidation doCheckCron(@QueryParameter(value = "cron", fixEmpty = true) String cron) {
+	/**
+	 * @param id launcher id, part of the seed of the <code>H</code> tokens
+	 */
+	public FormValidation doCheckCron(@QueryParameter(value = "cron", fixEmpty = true) String cron,
+			@QueryParameter(value = "id") String id) {
+		return checkCron(cron, id == null ? "" : id.trim());
+	}
+
+	/**
+	 * Validate the cron expression once its <code>H</code> tokens are resolved for the given launcher.
+	 */
+	private FormValidation checkCron(String cron, String id) {
 		if (cron == null) {
 			return FormValidation.warning(Messages.multilauncher_validate_cron_warn());
 
 		}
-		if (!org.quartz.CronExpression.isValidExpression(cron)) {
+		String resolved;
+		try {
+			resolved = HashedCron.resolve(cron, HashedCron.seed(target.getFullName(), id));
+		} catch (IllegalArgumentException e) {
+			return FormValidation.error(e.getMessage());
+		}
+		if (!org.quartz.CronExpression.isValidExpression(resolved)) {
 			return FormValidation.error(Messages.multilauncher_validate_cron_error());
 		}
+		if (HashedCron.isHashed(cron)) {
+			return FormValidation.ok(Messages.multilauncher_validate_cron_hashed(resolved));
+		}
 		return FormValidation.ok();
 	}
 
+	public FormValidation doCheckTemplate(@QueryParameter String value) {
+		if (value == null || value.trim().length() == 0 || getDescriptor().getTemplate(value.trim()) != null) {
+			return FormValidation.ok();
+		}
+		return FormValidation.error(Messages.multilauncher_form_template_error(value));
+	}
+
 	public FormValidation doCheckId(@QueryParameter(value = "id", fixEmpty = true) String id) {
 		if (id == null || id.trim().equals("")) {
 			return FormValidation.error(Messages.multilauncher_validate_id_error());
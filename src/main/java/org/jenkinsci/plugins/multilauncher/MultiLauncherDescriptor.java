@@ -24,30 +24,137 @@
 package org.jenkinsci.plugins.multilauncher;
 
 import hudson.Extension;
+import hudson.Util;
 import hudson.model.JobProperty;
 import hudson.model.JobPropertyDescriptor;
 import hudson.model.AbstractProject;
 import hudson.model.Job;
+import hudson.util.FormValidation;
+import hudson.util.Secret;
 
+import java.io.IOException;
+import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 
+import org.jenkinsci.plugins.multilauncher.data.ConcurrencyPolicy;
 import org.jenkinsci.plugins.multilauncher.data.Launcher;
+import org.jenkinsci.plugins.multilauncher.data.LauncherPriority;
+import org.jenkinsci.plugins.multilauncher.data.MisfirePolicy;
+import org.jenkinsci.plugins.multilauncher.utils.AdmissionController;
+import org.jenkinsci.plugins.multilauncher.utils.FireBatcher;
+import org.jenkinsci.plugins.multilauncher.utils.FireDeduplicator;
+import org.jenkinsci.plugins.multilauncher.utils.HashedCron;
+import org.jenkinsci.plugins.multilauncher.utils.JdbcLeaseStore;
+import org.jenkinsci.plugins.multilauncher.utils.LauncherCluster;
 import org.jenkinsci.plugins.multilauncher.utils.LauncherTrigger;
+import org.jenkinsci.plugins.multilauncher.utils.SchedulerEngine;
 import org.kohsuke.stapler.Ancestor;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
+import org.quartz.CronExpression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @Extension
 public final class MultiLauncherDescriptor extends JobPropertyDescriptor {
+	private static final Logger LOG = LoggerFactory.getLogger(MultiLauncherDescriptor.class);
+
+	/**
+	 * Global launcher templates, by their id, that project launchers may reference.
+	 */
 	private List<Launcher> launchers = new ArrayList<Launcher>();
 
+	/**
+	 * Incremented each time the templates change, so that projects resolve their launchers again.
+	 */
+	private transient volatile long templatesVersion = 0;
+
+	private SchedulerEngine schedulerEngine = SchedulerEngine.QUARTZ;
+
+	/**
+	 * Number of scheduler threads firing launchers.
+	 */
+	private int schedulerThreads = 1;
+
+	/**
+	 * When set, quartz threads only hand the fire off to an elastic pool of at most {@link #fireThreads} threads.
+	 */
+	private boolean handOffFires = false;
+
+	private int fireThreads = 10;
+
+	/**
+	 * Fires landing within this many milliseconds are put in the build queue together. 0 disables batching.
+	 */
+	private long batchWindow = 100;
+
+	private int maxBatchSize = 100;
+
+	/**
+	 * Fires of a project with the same parameter values within this many seconds start a single build. 0 disables it.
+	 */
+	private long dedupeWindow = 0;
+
+	/**
+	 * Clustered mode: fires are shared with the other controllers using the same lease store.
+	 */
+	private boolean clusterEnabled = false;
+
+	/**
+	 * Name of this controller in the cluster, generated when empty.
+	 */
+	private String clusterNodeId = null;
+
+	private String clusterJdbcUrl = null;
+
+	private String clusterJdbcUser = null;
+
+	private Secret clusterJdbcPassword = null;
+
+	/**
+	 * Admission control: fires are rate limited, and deferred or dropped by priority while the queue is saturated.
+	 */
+	private boolean admissionEnabled = false;
+
+	/**
+	 * Fires admitted per minute, 0 for no limit.
+	 */
+	private int admissionRate = 600;
+
+	private int admissionBurst = 100;
+
+	/**
+	 * Queue length from which the queue is saturated, 0 to not check it.
+	 */
+	private int admissionMaxQueue = 500;
+
+	/**
+	 * Idle executors below which the queue is saturated, 0 to not check them.
+	 */
+	private int admissionMinIdle = 0;
+
+	private int admissionRetryDelay = 30;
+
+	private int admissionMaxRetries = 10;
+
+	private int admissionMaxDeferred = 1000;
+
 	public MultiLauncherDescriptor() {
 		super(MultiLauncher.class);
+		load();
 
-		LauncherTrigger.isInitialized();
+		applyConfiguration();
 	}
 
 	@DataBoundConstructor
@@ -63,6 +170,339 @@ public final class MultiLauncherDescriptor extends JobPropertyDescriptor {
 		this.launchers = new ArrayList<Launcher>(launchers);
 	}
 
+	public List<Launcher> getTemplates() {
+		return launchers == null ? Collections.<Launcher> emptyList() : launchers;
+	}
+
+	/**
+	 * @return the template with this id, or null
+	 */
+	public Launcher getTemplate(String id) {
+		for (Launcher t : getTemplates()) {
+			if (t.getId() != null && t.getId().equals(id)) {
+				return t;
+			}
+		}
+		return null;
+	}
+
+	public MisfirePolicy[] getMisfirePolicies() {
+		return MisfirePolicy.values();
+	}
+
+	public ConcurrencyPolicy[] getConcurrencyPolicies() {
+		return ConcurrencyPolicy.values();
+	}
+
+	public LauncherPriority[] getPriorities() {
+		return LauncherPriority.values();
+	}
+
+	public long getTemplatesVersion() {
+		return templatesVersion;
+	}
+
+	/**
+	 * @return the launcher as it runs: completed by its template, if it has one
+	 */
+	public Launcher resolve(Launcher l) {
+		if (l.getTemplate() == null) {
+			return l;
+		}
+		Launcher t = getTemplate(l.getTemplate());
+		return t == null ? l : l.inherit(t);
+	}
+
+	public SchedulerEngine getSchedulerEngine() {
+		return schedulerEngine == null ? SchedulerEngine.QUARTZ : schedulerEngine;
+	}
+
+	public int getSchedulerThreads() {
+		return schedulerThreads;
+	}
+
+	public boolean isHandOffFires() {
+		return handOffFires;
+	}
+
+	public int getFireThreads() {
+		return fireThreads;
+	}
+
+	public long getBatchWindow() {
+		return batchWindow;
+	}
+
+	public long getDedupeWindow() {
+		return dedupeWindow;
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public boolean isClusterEnabled() {
+		return clusterEnabled;
+	}
+
+	public String getClusterNodeId() {
+		return clusterNodeId;
+	}
+
+	public String getClusterJdbcUrl() {
+		return clusterJdbcUrl;
+	}
+
+	public String getClusterJdbcUser() {
+		return clusterJdbcUser;
+	}
+
+	public Secret getClusterJdbcPassword() {
+		return clusterJdbcPassword;
+	}
+
+	public boolean isAdmissionEnabled() {
+		return admissionEnabled;
+	}
+
+	public int getAdmissionRate() {
+		return admissionRate;
+	}
+
+	public int getAdmissionBurst() {
+		return admissionBurst;
+	}
+
+	public int getAdmissionMaxQueue() {
+		return admissionMaxQueue;
+	}
+
+	public int getAdmissionMinIdle() {
+		return admissionMinIdle;
+	}
+
+	public int getAdmissionRetryDelay() {
+		return admissionRetryDelay;
+	}
+
+	public int getAdmissionMaxRetries() {
+		return admissionMaxRetries;
+	}
+
+	public int getAdmissionMaxDeferred() {
+		return admissionMaxDeferred;
+	}
+
+	private void applyConfiguration() {
+		FireBatcher.configure(batchWindow, maxBatchSize);
+		FireDeduplicator.configure(TimeUnit.SECONDS.toMillis(dedupeWindow));
+		LauncherTrigger.configure(getSchedulerEngine(), schedulerThreads, handOffFires, fireThreads);
+		if (clusterEnabled && clusterJdbcUrl != null) {
+			LauncherCluster.configure(new JdbcLeaseStore(clusterJdbcUrl, clusterJdbcUser,
+					Secret.toString(clusterJdbcPassword)), nodeId());
+		} else {
+			LauncherCluster.configure(null, null);
+		}
+		if (admissionEnabled) {
+			AdmissionController.configure(admissionRate, admissionBurst, admissionMaxQueue, admissionMinIdle,
+					admissionRetryDelay, admissionMaxRetries, admissionMaxDeferred);
+		} else {
+			AdmissionController.disable();
+		}
+	}
+
+	/**
+	 * @return the configured node id, or one made of the host name and the instance id
+	 */
+	private String nodeId() {
+		if (clusterNodeId != null) {
+			return clusterNodeId;
+		}
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (IOException e) {
+			host = "localhost";
+		}
+		return host + "-" + Jenkins.getInstance().getLegacyInstanceId().substring(0, 8);
+	}
+
+	@Override
+	public boolean configure(StaplerRequest req, JSONObject json) throws hudson.model.Descriptor.FormException {
+		try {
+			schedulerEngine = SchedulerEngine.valueOf(json.optString("schedulerEngine", getSchedulerEngine().name()));
+		} catch (IllegalArgumentException e) {
+			throw new hudson.model.Descriptor.FormException(e, "schedulerEngine");
+		}
+		schedulerThreads = positive(json, "schedulerThreads", schedulerThreads);
+		handOffFires = json.optBoolean("handOffFires");
+		fireThreads = positive(json, "fireThreads", fireThreads);
+		batchWindow = positiveOrZero(json, "batchWindow", batchWindow);
+		maxBatchSize = positive(json, "maxBatchSize", maxBatchSize);
+		dedupeWindow = positiveOrZero(json, "dedupeWindow", dedupeWindow);
+		JSONObject cluster = json.optJSONObject("cluster");
+		clusterEnabled = cluster != null && !cluster.isNullObject();
+		if (clusterEnabled) {
+			clusterNodeId = Util.fixEmptyAndTrim(cluster.optString("clusterNodeId"));
+			clusterJdbcUrl = Util.fixEmptyAndTrim(cluster.optString("clusterJdbcUrl"));
+			clusterJdbcUser = Util.fixEmptyAndTrim(cluster.optString("clusterJdbcUser"));
+			clusterJdbcPassword = Secret.fromString(cluster.optString("clusterJdbcPassword"));
+			if (clusterJdbcUrl == null) {
+				throw new hudson.model.Descriptor.FormException(Messages.multilauncher_form_cluster_url_error(),
+						"clusterJdbcUrl");
+			}
+		}
+		JSONObject admission = json.optJSONObject("admission");
+		admissionEnabled = admission != null && !admission.isNullObject();
+		if (admissionEnabled) {
+			admissionRate = (int) positiveOrZero(admission, "admissionRate", admissionRate);
+			admissionBurst = positive(admission, "admissionBurst", admissionBurst);
+			admissionMaxQueue = (int) positiveOrZero(admission, "admissionMaxQueue", admissionMaxQueue);
+			admissionMinIdle = (int) positiveOrZero(admission, "admissionMinIdle", admissionMinIdle);
+			admissionRetryDelay = positive(admission, "admissionRetryDelay", admissionRetryDelay);
+			admissionMaxRetries = (int) positiveOrZero(admission, "admissionMaxRetries", admissionMaxRetries);
+			admissionMaxDeferred = positive(admission, "admissionMaxDeferred", admissionMaxDeferred);
+		}
+		List<Launcher> templates = bindTemplates(req, json);
+		boolean templatesChanged = !Jenkins.XSTREAM2.toXML(templates).equals(Jenkins.XSTREAM2.toXML(getTemplates()));
+		launchers = templates;
+		save();
+
+		applyConfiguration();
+		if (templatesChanged) {
+			templatesVersion++;
+			rescheduleTemplateUsers();
+		}
+		return true;
+	}
+
+	private List<Launcher> bindTemplates(StaplerRequest req, JSONObject json)
+			throws hudson.model.Descriptor.FormException {
+		List<Launcher> templates = new ArrayList<Launcher>();
+		Object data = json.opt("templates");
+		if (data instanceof JSONArray) {
+			templates.addAll(req.bindJSONToList(Launcher.class, data));
+		} else if (data instanceof JSONObject) {
+			templates.add(req.bindJSON(Launcher.class, (JSONObject) data));
+		}
+
+		Set<String> ids = new HashSet<String>();
+		for (ListIterator<Launcher> it = templates.listIterator(); it.hasNext();) {
+			// Templates do not inherit from other templates.
+			Launcher t = it.next().withTemplate(null);
+			it.set(t);
+			if (t.getId() == null || t.getId().trim().length() == 0) {
+				throw new hudson.model.Descriptor.FormException(Messages.multilauncher_form_id_error(), "templates");
+			}
+			if (!ids.add(t.getId())) {
+				throw new hudson.model.Descriptor.FormException(Messages.multilauncher_form_id_duplicate(t.getId()),
+						"templates");
+			}
+			try {
+				if (t.getCron() == null
+						|| !CronExpression.isValidExpression(HashedCron.resolve(t.getCron(), t.getId()))) {
+					throw new hudson.model.Descriptor.FormException(Messages.multilauncher_form_cron_error(t.getCron()),
+							"templates");
+				}
+			} catch (IllegalArgumentException e) {
+				throw new hudson.model.Descriptor.FormException(Messages.multilauncher_form_cron_error(t.getCron()),
+						"templates");
+			}
+		}
+		return templates;
+	}
+
+	/**
+	 * Bring the triggers of the projects using templates in line with the new templates. Their configuration is
+	 * not written: they only hold a reference to the template.
+	 */
+	private void rescheduleTemplateUsers() {
+		List<AbstractProject<?, ?>> users = new ArrayList<AbstractProject<?, ?>>();
+		for (AbstractProject<?, ?> project : Jenkins.getInstance().getAllItems(AbstractProject.class)) {
+			MultiLauncher property = project.getProperty(MultiLauncher.class);
+			if (property != null && property.usesTemplates()) {
+				users.add(project);
+			}
+		}
+		int scheduled = LauncherTrigger.updateAll(users);
+		LOG.info("Launcher templates changed: {} projects checked, {} triggers rescheduled", users.size(), scheduled);
+	}
+
+	private static int positive(JSONObject json, String field, int current) throws hudson.model.Descriptor.FormException {
+		String value = json.optString(field, String.valueOf(current)).trim();
+		try {
+			int i = Integer.parseInt(value);
+			if (i > 0) {
+				return i;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below.
+		}
+		throw new hudson.model.Descriptor.FormException(Messages.multilauncher_form_positive_error(value), field);
+	}
+
+	private static long positiveOrZero(JSONObject json, String field, long current)
+			throws hudson.model.Descriptor.FormException {
+		String value = json.optString(field, String.valueOf(current)).trim();
+		try {
+			long l = Long.parseLong(value);
+			if (l >= 0) {
+				return l;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below.
+		}
+		throw new hudson.model.Descriptor.FormException(Messages.multilauncher_form_positive_error(value), field);
+	}
+
+	public FormValidation doCheckSchedulerThreads(@QueryParameter String value) {
+		return FormValidation.validatePositiveInteger(value);
+	}
+
+	public FormValidation doCheckFireThreads(@QueryParameter String value) {
+		return FormValidation.validatePositiveInteger(value);
+	}
+
+	public FormValidation doCheckBatchWindow(@QueryParameter String value) {
+		return FormValidation.validateNonNegativeInteger(value);
+	}
+
+	public FormValidation doCheckMaxBatchSize(@QueryParameter String value) {
+		return FormValidation.validatePositiveInteger(value);
+	}
+
+	public FormValidation doCheckDedupeWindow(@QueryParameter String value) {
+		return FormValidation.validateNonNegativeInteger(value);
+	}
+
+	public FormValidation doCheckAdmissionRate(@QueryParameter String value) {
+		return FormValidation.validateNonNegativeInteger(value);
+	}
+
+	public FormValidation doCheckAdmissionBurst(@QueryParameter String value) {
+		return FormValidation.validatePositiveInteger(value);
+	}
+
+	public FormValidation doCheckAdmissionMaxQueue(@QueryParameter String value) {
+		return FormValidation.validateNonNegativeInteger(value);
+	}
+
+	public FormValidation doCheckAdmissionMinIdle(@QueryParameter String value) {
+		return FormValidation.validateNonNegativeInteger(value);
+	}
+
+	public FormValidation doCheckAdmissionRetryDelay(@QueryParameter String value) {
+		return FormValidation.validatePositiveInteger(value);
+	}
+
+	public FormValidation doCheckAdmissionMaxRetries(@QueryParameter String value) {
+		return FormValidation.validateNonNegativeInteger(value);
+	}
+
+	public FormValidation doCheckAdmissionMaxDeferred(@QueryParameter String value) {
+		return FormValidation.validatePositiveInteger(value);
+	}
+
 	@Override
 	public boolean isApplicable(@SuppressWarnings("rawtypes") Class<? extends Job> jobType) {
 		return AbstractProject.class.isAssignableFrom(jobType);
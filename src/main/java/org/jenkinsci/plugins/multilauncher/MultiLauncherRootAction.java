@@ -0,0 +1,295 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.RootAction;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+import net.sf.json.util.JSONUtils;
+
+import org.apache.commons.io.IOUtils;
+
+import org.jenkinsci.plugins.multilauncher.utils.FireCalendar;
+import org.jenkinsci.plugins.multilauncher.utils.LauncherKey;
+import org.jenkinsci.plugins.multilauncher.utils.LauncherMetrics;
+import org.jenkinsci.plugins.multilauncher.utils.LoadForecast;
+import org.jenkinsci.plugins.multilauncher.utils.ProjectIndex;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * Global entry point of the plugin.
+ * <ul>
+ * <li><code>/multiLauncher/</code>: page of the upcoming fires.</li>
+ * <li><code>/multiLauncher/upcoming</code>: upcoming fires as JSON, streamed. Accepts <code>folder</code>,
+ * <code>from</code> (epoch milliseconds, default now), <code>hours</code> (default 24) and <code>limit</code>
+ * (default 100).</li>
+ * <li><code>/multiLauncher/bulk</code>: POST a {@link LauncherBulkUpdate} request to change the launchers of many
+ * projects at once.</li>
+ * <li><code>/multiLauncher/forecast</code>: heatmap of the builds the launchers will run each hour of the coming days,
+ * and <code>/multiLauncher/forecastData</code> the per-minute forecast as JSON. Accept <code>folder</code>,
+ * <code>hours</code> (default a week from today midnight) and <code>duration</code>, the minutes assumed for projects
+ * without build history (default 10). The same forecast is served again for a minute.</li>
+ * <li><code>/multiLauncher/metrics</code>: scheduler metrics as JSON, per launcher when called with
+ * <code>?launchers=true</code>. Administrators only.</li>
+ * </ul>
+ * Only the launchers of the projects the user can read are returned.
+ */
+@Extension
+public class MultiLauncherRootAction implements RootAction {
+
+	public static final int DEFAULT_LIMIT = 100;
+
+	public static final int MAX_LIMIT = 10000;
+
+	public static final int DEFAULT_HOURS = 24;
+
+	public static final int DEFAULT_FORECAST_HOURS = 7 * 24;
+
+	public static final int DEFAULT_DURATION_MINUTES = 10;
+
+	/**
+	 * A forecast simulates every cron minute by minute: the same one is served again for this long.
+	 */
+	static final long FORECAST_TTL = TimeUnit.MINUTES.toMillis(1);
+
+	private static final int MAX_CACHED_FORECASTS = 100;
+
+	/**
+	 * Forecasts computed lately, by user and parameters, as the user only sees the projects it can read. Guarded by
+	 * itself, which also computes one forecast at a time.
+	 */
+	private static final Map<String, CachedForecast> FORECASTS = new HashMap<String, CachedForecast>();
+
+	@Override
+	public String getIconFileName() {
+		return "/plugin/multi-launcher/img/multilaunch.png";
+	}
+
+	@Override
+	public String getDisplayName() {
+		return "Upcoming launches";
+	}
+
+	@Override
+	public String getUrlName() {
+		return "multiLauncher";
+	}
+
+	public void doMetrics(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.getWriter().print(LauncherMetrics.get().toJSON("true".equals(req.getParameter("launchers"))));
+	}
+
+	public void doUpcoming(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		Jenkins.getInstance().checkPermission(Jenkins.READ);
+		long from = parseLong(req.getParameter("from"), System.currentTimeMillis());
+		long to = from + parseLong(req.getParameter("hours"), DEFAULT_HOURS) * 3600000L;
+		int limit = (int) Math.min(parseLong(req.getParameter("limit"), DEFAULT_LIMIT), MAX_LIMIT);
+
+		rsp.setContentType("application/json;charset=UTF-8");
+		final PrintWriter w = rsp.getWriter();
+		w.print("{\"from\":" + from + ",\"to\":" + to + ",\"fires\":[");
+		FireCalendar.get().upcoming(from, to, limit, new Filter(req.getParameter("folder")) {
+			private boolean first = true;
+
+			@Override
+			public void visit(LauncherKey key, long time) {
+				if (!first) {
+					w.print(',');
+				}
+				first = false;
+				w.print("{\"project\":" + JSONUtils.quote(key.getProject()) + ",\"launcher\":"
+						+ JSONUtils.quote(key.getLauncher()) + ",\"time\":" + time + "}");
+			}
+		});
+		w.print("]}");
+		w.flush();
+	}
+
+	@RequirePOST
+	public void doBulk(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		Jenkins.getInstance().checkPermission(Jenkins.READ);
+		JSONObject result = LauncherBulkUpdate.apply(JSONObject.fromObject(IOUtils.toString(req.getReader())));
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.getWriter().print(result);
+	}
+
+	public void doForecastData(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		LoadForecast forecast = getForecast(req.getParameter("folder"), req.getParameter("hours"),
+				req.getParameter("duration"));
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.getWriter().print(forecast.toJSON());
+	}
+
+	/**
+	 * Used by the forecast page: the forecast starts at midnight today, so that its rows are days.
+	 */
+	public LoadForecast getForecast(String folder, String hours, String duration) {
+		Jenkins.getInstance().checkPermission(Jenkins.READ);
+		Calendar midnight = Calendar.getInstance();
+		midnight.set(Calendar.HOUR_OF_DAY, 0);
+		midnight.set(Calendar.MINUTE, 0);
+		midnight.set(Calendar.SECOND, 0);
+		midnight.set(Calendar.MILLISECOND, 0);
+		int h = (int) Math.min(parseLong(hours, DEFAULT_FORECAST_HOURS), LoadForecast.MAX_HOURS);
+		long d = parseLong(duration, DEFAULT_DURATION_MINUTES) * 60000L;
+		String cacheKey = Jenkins.getAuthentication().getName() + '\n' + (folder == null ? "" : folder.trim()) + '\n' + h
+				+ '\n' + d + '\n' + midnight.getTimeInMillis();
+
+		synchronized (FORECASTS) {
+			long now = System.currentTimeMillis();
+			CachedForecast cached = FORECASTS.get(cacheKey);
+			if (cached != null && now - cached.time < FORECAST_TTL) {
+				return cached.forecast;
+			}
+			LoadForecast forecast = LoadForecast.compute(midnight.getTimeInMillis(), h, d, new Filter(folder) {
+				@Override
+				public void visit(LauncherKey key, long time) {
+					// Only used as a filter.
+				}
+			});
+			for (Iterator<CachedForecast> it = FORECASTS.values().iterator(); it.hasNext();) {
+				if (now - it.next().time >= FORECAST_TTL) {
+					it.remove();
+				}
+			}
+			if (FORECASTS.size() >= MAX_CACHED_FORECASTS) {
+				FORECASTS.clear();
+			}
+			FORECASTS.put(cacheKey, new CachedForecast(forecast, now));
+			return forecast;
+		}
+	}
+
+	/**
+	 * Used by the page.
+	 */
+	public List<UpcomingFire> getUpcoming(String folder, String hours, String limit) throws IOException {
+		long from = System.currentTimeMillis();
+		long to = from + parseLong(hours, DEFAULT_HOURS) * 3600000L;
+		final List<UpcomingFire> fires = new ArrayList<UpcomingFire>();
+		FireCalendar.get().upcoming(from, to, (int) Math.min(parseLong(limit, DEFAULT_LIMIT), MAX_LIMIT),
+				new Filter(folder) {
+					@Override
+					public void visit(LauncherKey key, long time) {
+						fires.add(new UpcomingFire(key, time));
+					}
+				});
+		return fires;
+	}
+
+	private static long parseLong(String value, long defaultValue) {
+		if (value == null || value.trim().length() == 0) {
+			return defaultValue;
+		}
+		try {
+			long l = Long.parseLong(value.trim());
+			return l < 0 ? defaultValue : l;
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Keep the launchers of the folder readable by the current user.
+	 */
+	private abstract static class Filter implements FireCalendar.Visitor {
+		private final String prefix;
+		private final Map<String, Boolean> readable = new HashMap<String, Boolean>();
+
+		private Filter(String folder) {
+			if (folder == null || folder.trim().length() == 0) {
+				prefix = null;
+			} else {
+				String f = folder.trim();
+				prefix = f.endsWith("/") ? f : f + "/";
+			}
+		}
+
+		@Override
+		public boolean accept(LauncherKey key) {
+			String project = key.getProject();
+			if (prefix != null && !project.startsWith(prefix)) {
+				return false;
+			}
+			Boolean ok = readable.get(project);
+			if (ok == null) {
+				AbstractProject<?, ?> p = ProjectIndex.get(project);
+				ok = p != null && p.hasPermission(Item.READ);
+				readable.put(project, ok);
+			}
+			return ok;
+		}
+	}
+
+	private static final class CachedForecast {
+		private final LoadForecast forecast;
+		private final long time;
+
+		private CachedForecast(LoadForecast forecast, long time) {
+			this.forecast = forecast;
+			this.time = time;
+		}
+	}
+
+	public static final class UpcomingFire {
+		private final LauncherKey key;
+		private final long time;
+
+		private UpcomingFire(LauncherKey key, long time) {
+			this.key = key;
+			this.time = time;
+		}
+
+		public String getProject() {
+			return key.getProject();
+		}
+
+		public String getLauncher() {
+			return key.getLauncher();
+		}
+
+		public Date getTime() {
+			return new Date(time);
+		}
+	}
+}
@@ -23,6 +23,8 @@
  */
 package org.jenkinsci.plugins.multilauncher.data;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -30,36 +32,219 @@ import org.kohsuke.stapler.DataBoundConstructor;
 public class Launcher {
 	private String id;
 	private String cron;
+
+	/**
+	 * Never null once loaded.
+	 */
+	private ParameterBlock parameters = ParameterBlock.EMPTY;
+
+	/**
+	 * Format of the older configurations, one element per value: only read, then moved to {@link #parameters}.
+	 */
+	@Deprecated
 	private List<LauncherParameterValue> parameter = null;
 
-	@DataBoundConstructor
+	private MisfirePolicy misfirePolicy = null;
+	private ConcurrencyPolicy concurrencyPolicy = null;
+	private LauncherPriority priority = null;
+
+	/**
+	 * Axes of a matrix launcher: one build per combination of their values. <code>null</code> for a plain launcher.
+	 */
+	private List<LauncherAxis> axes = null;
+
+	/**
+	 * Combinations of the axes to build, one <code>name=value,name=value</code> pattern per line; all when empty.
+	 */
+	private String include = null;
+
+	/**
+	 * Combinations of the axes not to build, in the same format as {@link #include}.
+	 */
+	private String exclude = null;
+
+	/**
+	 * Name of the global template this launcher inherits its cron, policies and parameter values from, if any.
+	 */
+	private String template = null;
+
 	public Launcher(String cron, String id, List<LauncherParameterValue> parameter) {
-		setCron(cron);
-		setId(id);
-		setParameter(parameter);
+		this(cron, id, parameter, null, null, null, null, null, null, null);
 	}
 
-	public String getCron() {
-		return cron;
+	/**
+	 * Unset policies, axes and template are <code>null</code>: policies then take their default, or the value of the
+	 * template.
+	 */
+	@DataBoundConstructor
+	public Launcher(String cron, String id, List<LauncherParameterValue> parameter, MisfirePolicy misfirePolicy,
+			ConcurrencyPolicy concurrencyPolicy, LauncherPriority priority, List<LauncherAxis> axes, String include,
+			String exclude, String template) {
+		this(cron, id, ParameterBlock.of(parameter));
+		this.misfirePolicy = misfirePolicy;
+		this.concurrencyPolicy = concurrencyPolicy;
+		this.priority = priority;
+		this.axes = axes == null || axes.isEmpty() ? null : new ArrayList<LauncherAxis>(axes);
+		this.include = isBlank(include) ? null : include.trim();
+		this.exclude = isBlank(exclude) ? null : exclude.trim();
+		this.template = isBlank(template) ? null : template.trim();
+	}
+
+	private Launcher(String cron, String id, ParameterBlock parameters) {
+		this.cron = Strings.intern(cron);
+		this.id = Strings.intern(id);
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Copy of this launcher, unset fields included, with other parameter values.
+	 */
+	public Launcher withParameters(List<LauncherParameterValue> parameter) {
+		Launcher l = copy();
+		l.parameters = ParameterBlock.of(parameter);
+		return l;
+	}
+
+	/**
+	 * Copy of this launcher, unset fields included, with another template or none.
+	 */
+	public Launcher withTemplate(String template) {
+		Launcher l = copy();
+		l.template = isBlank(template) ? null : template.trim();
+		return l;
+	}
+
+	private Launcher copy() {
+		Launcher l = new Launcher(cron, id, parameters);
+		l.misfirePolicy = misfirePolicy;
+		l.concurrencyPolicy = concurrencyPolicy;
+		l.priority = priority;
+		l.axes = axes;
+		l.include = include;
+		l.exclude = exclude;
+		l.template = template;
+		return l;
+	}
+
+	@SuppressWarnings("deprecation")
+	private Object readResolve() {
+		if (parameter != null) {
+			parameters = ParameterBlock.of(parameter);
+			parameter = null;
+		} else if (parameters == null) {
+			parameters = ParameterBlock.EMPTY;
+		}
+		id = Strings.intern(id);
+		cron = Strings.intern(cron);
+		return this;
 	}
 
-	public void setCron(String cron) {
-		this.cron = cron;
+	public String getCron() {
+		return cron;
 	}
 
 	public String getId() {
 		return id;
 	}
 
-	public void setId(String id) {
-		this.id = id;
+	/**
+	 * @return read only view of the parameter values
+	 */
+	public List<LauncherParameterValue> getParameter() {
+		return parameters.asList();
 	}
 
-	public List<LauncherParameterValue> getParameter() {
-		return parameter;
+	public ParameterBlock getParameters() {
+		return parameters;
+	}
+
+	public MisfirePolicy getMisfirePolicy() {
+		return misfirePolicy == null ? MisfirePolicy.SKIP : misfirePolicy;
+	}
+
+	public ConcurrencyPolicy getConcurrencyPolicy() {
+		return concurrencyPolicy == null ? ConcurrencyPolicy.ALLOW : concurrencyPolicy;
+	}
+
+	public LauncherPriority getPriority() {
+		return priority == null ? LauncherPriority.NORMAL : priority;
+	}
+
+	/**
+	 * @return the axes of a matrix launcher, empty for a plain launcher
+	 */
+	public List<LauncherAxis> getAxes() {
+		return axes == null ? Collections.<LauncherAxis> emptyList() : Collections.unmodifiableList(axes);
+	}
+
+	public boolean isMatrix() {
+		return axes != null;
+	}
+
+	public String getInclude() {
+		return include;
+	}
+
+	public String getExclude() {
+		return exclude;
+	}
+
+	public String getTemplate() {
+		return template;
+	}
+
+	/**
+	 * @return this launcher completed by the template: its own cron, policies and parameter values take precedence
+	 */
+	public Launcher inherit(Launcher t) {
+		Launcher l = new Launcher(isBlank(cron) ? t.cron : cron, id, t.parameters.with(parameters));
+		l.misfirePolicy = misfirePolicy != null ? misfirePolicy : t.misfirePolicy;
+		l.concurrencyPolicy = concurrencyPolicy != null ? concurrencyPolicy : t.concurrencyPolicy;
+		l.priority = priority != null ? priority : t.priority;
+		// Axes and their filters go together.
+		if (axes != null || t.axes == null) {
+			l.axes = axes;
+			l.include = include;
+			l.exclude = exclude;
+		} else {
+			l.axes = t.axes;
+			l.include = t.include;
+			l.exclude = t.exclude;
+		}
+		l.template = template;
+		return l;
+	}
+
+	/**
+	 * @return this launcher without what it would inherit from the template anyway, to store only the overrides
+	 */
+	public Launcher overridesOf(Launcher t) {
+		List<LauncherParameterValue> values = new ArrayList<LauncherParameterValue>();
+		for (int i = 0; i < parameters.size(); i++) {
+			String name = parameters.getName(i);
+			String value = parameters.getValue(i);
+			if (t.parameters.indexOf(name) < 0 || !equal(t.parameters.get(name), value)) {
+				values.add(new LauncherParameterValue(name, value));
+			}
+		}
+		Launcher l = new Launcher(isBlank(cron) || equal(cron, t.cron) ? null : cron, id, values);
+		l.misfirePolicy = getMisfirePolicy() == t.getMisfirePolicy() ? null : misfirePolicy;
+		l.concurrencyPolicy = getConcurrencyPolicy() == t.getConcurrencyPolicy() ? null : concurrencyPolicy;
+		l.priority = getPriority() == t.getPriority() ? null : priority;
+		if (!(getAxes().equals(t.getAxes()) && equal(include, t.include) && equal(exclude, t.exclude))) {
+			l.axes = axes;
+			l.include = include;
+			l.exclude = exclude;
+		}
+		l.template = template;
+		return l;
+	}
+
+	private static boolean isBlank(String s) {
+		return s == null || s.trim().length() == 0;
 	}
 
-	public void setParameter(List<LauncherParameterValue> parameter) {
-		this.parameter = parameter;
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
 	}
 }
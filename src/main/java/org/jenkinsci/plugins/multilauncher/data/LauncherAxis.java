@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * A parameter taking several values, one build of a matrix launcher for each of them.
+ */
+public class LauncherAxis {
+	private String name;
+
+	/**
+	 * Never null once loaded.
+	 */
+	private String[] values;
+
+	/**
+	 * @param values separated by spaces, like the axes of a matrix project
+	 */
+	@DataBoundConstructor
+	public LauncherAxis(String name, String values) {
+		this.name = Strings.intern(name == null ? null : name.trim());
+		this.values = split(values);
+	}
+
+	private Object readResolve() {
+		name = Strings.intern(name);
+		if (values == null) {
+			values = new String[0];
+		}
+		for (int i = 0; i < values.length; i++) {
+			values[i] = Strings.intern(values[i]);
+		}
+		return this;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the values separated by spaces, as entered
+	 */
+	public String getValues() {
+		StringBuilder sb = new StringBuilder();
+		for (String v : values) {
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			sb.append(v);
+		}
+		return sb.toString();
+	}
+
+	public List<String> getValueList() {
+		return Collections.unmodifiableList(Arrays.asList(values));
+	}
+
+	public int size() {
+		return values.length;
+	}
+
+	public String getValue(int i) {
+		return values[i];
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof LauncherAxis)) {
+			return false;
+		}
+		LauncherAxis other = (LauncherAxis) o;
+		return (name == null ? other.name == null : name.equals(other.name)) && Arrays.equals(values, other.values);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (name == null ? 0 : name.hashCode()) + Arrays.hashCode(values);
+	}
+
+	private static String[] split(String values) {
+		List<String> list = new ArrayList<String>();
+		if (values != null) {
+			for (String v : values.trim().split("\\s+")) {
+				if (v.length() > 0 && !list.contains(v)) {
+					list.add(Strings.intern(v));
+				}
+			}
+		}
+		return list.toArray(new String[list.size()]);
+	}
+}
@@ -32,24 +32,25 @@ public class LauncherParameterValue {
 	@DataBoundConstructor
 	public LauncherParameterValue(String name, String value) {
 		super();
-		this.name = name;
-		this.value = value;
+		this.name = Strings.intern(name);
+		this.value = Strings.intern(value);
 	}
 
-	public String getName() {
-		return name;
+	/**
+	 * The same names and values are repeated across launchers and projects: keep a single copy of each.
+	 */
+	private Object readResolve() {
+		name = Strings.intern(name);
+		value = Strings.intern(value);
+		return this;
 	}
 
-	public void setName(String name) {
-		this.name = name;
+	public String getName() {
+		return name;
 	}
 
 	public String getValue() {
 		return value;
 	}
 
-	public void setValue(String value) {
-		this.value = value;
-	}
-
 }
@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+/**
+ * Immutable parameter values of a launcher: two parallel arrays of interned names and values.
+ * 
+ * Stored as <code>&lt;p n="NAME"&gt;value&lt;/p&gt;</code> elements rather than one
+ * {@link LauncherParameterValue} element with two children per value.
+ */
+public final class ParameterBlock {
+	public static final ParameterBlock EMPTY = new ParameterBlock(new String[0], new String[0]);
+
+	private final String[] names;
+	private final String[] values;
+
+	private ParameterBlock(String[] names, String[] values) {
+		this.names = names;
+		this.values = values;
+	}
+
+	/**
+	 * @param values values in order; a later value replaces an earlier one with the same name
+	 */
+	public static ParameterBlock of(List<LauncherParameterValue> values) {
+		if (values == null || values.isEmpty()) {
+			return EMPTY;
+		}
+		List<String> n = new ArrayList<String>(values.size());
+		List<String> v = new ArrayList<String>(values.size());
+		for (LauncherParameterValue value : values) {
+			if (value == null || value.getName() == null) {
+				continue;
+			}
+			int i = n.indexOf(value.getName());
+			if (i < 0) {
+				n.add(Strings.intern(value.getName()));
+				v.add(Strings.intern(value.getValue()));
+			} else {
+				v.set(i, Strings.intern(value.getValue()));
+			}
+		}
+		return n.isEmpty() ? EMPTY : new ParameterBlock(n.toArray(new String[n.size()]), v.toArray(new String[v
+				.size()]));
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public boolean isEmpty() {
+		return names.length == 0;
+	}
+
+	public String getName(int i) {
+		return names[i];
+	}
+
+	public String getValue(int i) {
+		return values[i];
+	}
+
+	/**
+	 * @return index of the parameter, or -1
+	 */
+	public int indexOf(String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return value of the parameter, or null
+	 */
+	public String get(String name) {
+		int i = indexOf(name);
+		return i < 0 ? null : values[i];
+	}
+
+	/**
+	 * @return this block with the values of the other one set, added after the current ones when new
+	 */
+	public ParameterBlock with(ParameterBlock other) {
+		if (other.isEmpty()) {
+			return this;
+		}
+		if (isEmpty()) {
+			return other;
+		}
+		String[] n = Arrays.copyOf(names, names.length + other.names.length);
+		String[] v = Arrays.copyOf(values, values.length + other.values.length);
+		int size = names.length;
+		for (int j = 0; j < other.names.length; j++) {
+			int i = indexOf(other.names[j]);
+			if (i < 0) {
+				n[size] = other.names[j];
+				v[size] = other.values[j];
+				size++;
+			} else {
+				v[i] = other.values[j];
+			}
+		}
+		return new ParameterBlock(Arrays.copyOf(n, size), Arrays.copyOf(v, size));
+	}
+
+	/**
+	 * Read only view, creating the values on access.
+	 */
+	public List<LauncherParameterValue> asList() {
+		return new AbstractList<LauncherParameterValue>() {
+			@Override
+			public LauncherParameterValue get(int index) {
+				return new LauncherParameterValue(names[index], values[index]);
+			}
+
+			@Override
+			public int size() {
+				return names.length;
+			}
+		};
+	}
+
+	public static final class ConverterImpl implements Converter {
+		@Override
+		@SuppressWarnings("rawtypes")
+		public boolean canConvert(Class type) {
+			return type == ParameterBlock.class;
+		}
+
+		@Override
+		public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+			ParameterBlock block = (ParameterBlock) source;
+			for (int i = 0; i < block.names.length; i++) {
+				writer.startNode("p");
+				writer.addAttribute("n", block.names[i]);
+				// An empty element reads back as "": mark the unset values apart.
+				if (block.values[i] == null) {
+					writer.addAttribute("null", "true");
+				} else {
+					writer.setValue(block.values[i]);
+				}
+				writer.endNode();
+			}
+		}
+
+		@Override
+		public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+			List<String> n = new ArrayList<String>();
+			List<String> v = new ArrayList<String>();
+			while (reader.hasMoreChildren()) {
+				reader.moveDown();
+				n.add(Strings.intern(reader.getAttribute("n")));
+				v.add("true".equals(reader.getAttribute("null")) ? null : Strings.intern(reader.getValue()));
+				reader.moveUp();
+			}
+			return n.isEmpty() ? EMPTY : new ParameterBlock(n.toArray(new String[n.size()]), v.toArray(new String[v
+					.size()]));
+		}
+	}
+}
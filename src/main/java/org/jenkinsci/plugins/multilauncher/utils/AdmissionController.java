@@ -0,0 +1,319 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import hudson.model.LoadStatistics;
+import hudson.model.MultiStageTimeSeries.TimeScale;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import org.jenkinsci.plugins.multilauncher.data.LauncherPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keep a burst of fires from flooding the build queue.
+ * 
+ * Fires take a token from a bucket refilled at the configured rate. While the queue is saturated, or the bucket is
+ * empty, only {@link LauncherPriority#HIGH} fires go through: the others are deferred and retried later, highest
+ * priority first, and {@link LauncherPriority#LOW} fires are dropped while the queue is saturated.
+ * 
+ * A launcher has at most one deferred fire, and a deferred fire is dropped after the maximum number of retries, so
+ * that the deferred fires stay bounded whatever the backlog.
+ * 
+ * The queue length and idle executors are the ones sampled by the Jenkins load statistics: reading them does not
+ * take the queue lock, the token bucket absorbs the bursts landing between two samples.
+ */
+public final class AdmissionController {
+	private static final Logger LOG = LoggerFactory.getLogger(AdmissionController.class);
+
+	private static final Object LOCK = new Object();
+
+	/**
+	 * <code>null</code> when admission control is disabled.
+	 */
+	private static volatile Settings settings = null;
+
+	private static double tokens = 0;
+
+	private static long refilledAt = 0;
+
+	private static final Map<LauncherKey, Deferred> deferred = new HashMap<LauncherKey, Deferred>();
+
+	private static boolean retryScheduled = false;
+
+	private AdmissionController() {
+	}
+
+	/**
+	 * @param ratePerMinute fires admitted per minute, 0 for no limit
+	 * @param burst fires admitted at once after a quiet period, and per retry round
+	 * @param maxQueue queue length from which the queue is saturated, 0 to not check it
+	 * @param minIdle idle executors below which the queue is saturated, 0 to not check them
+	 * @param retryDelay seconds between two retries of the deferred fires
+	 * @param maxRetries retries of a deferred fire before it is dropped
+	 * @param maxDeferred deferred fires kept at most
+	 */
+	public static void configure(int ratePerMinute, int burst, int maxQueue, int minIdle, int retryDelay,
+			int maxRetries, int maxDeferred) {
+		synchronized (LOCK) {
+			settings = new Settings(Math.max(0, ratePerMinute), Math.max(1, burst), Math.max(0, maxQueue),
+					Math.max(0, minIdle), Math.max(1, retryDelay), Math.max(0, maxRetries), Math.max(1, maxDeferred));
+			tokens = settings.burst;
+			refilledAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Admit every fire from now on. The fires still deferred are released at their next retry.
+	 */
+	public static void disable() {
+		settings = null;
+	}
+
+	/**
+	 * @return <code>true</code> to fire now, <code>false</code> if the fire has been deferred or dropped
+	 */
+	public static boolean admit(LauncherKey key, LauncherPriority priority, long scheduledTime) {
+		Settings s = settings;
+		if (s == null) {
+			return true;
+		}
+
+		boolean saturated = isSaturated(s);
+		synchronized (LOCK) {
+			// A fire going through covers the fire of the same launcher still waiting.
+			if (priority == LauncherPriority.HIGH) {
+				takeToken(s);
+				dropDeferred(key);
+				return true;
+			}
+			if (!saturated && takeToken(s)) {
+				dropDeferred(key);
+				return true;
+			}
+			if (saturated && priority == LauncherPriority.LOW) {
+				LauncherMetrics.get().dropped();
+				LOG.info("Launcher {} dropped: the build queue is saturated", key);
+				return false;
+			}
+			defer(s, new Deferred(key, priority, scheduledTime));
+			return false;
+		}
+	}
+
+	/**
+	 * Forget the deferred fires of a project, when it is removed or renamed.
+	 */
+	public static void forget(String projectFullName) {
+		synchronized (LOCK) {
+			for (Iterator<LauncherKey> it = deferred.keySet().iterator(); it.hasNext();) {
+				if (it.next().getProject().equals(projectFullName)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of fires waiting for a retry
+	 */
+	public static int getDeferredCount() {
+		synchronized (LOCK) {
+			return deferred.size();
+		}
+	}
+
+	private static void defer(Settings s, Deferred fire) {
+		Deferred previous = deferred.remove(fire.key);
+		if (previous != null) {
+			LauncherMetrics.get().dropped();
+		} else if (deferred.size() >= s.maxDeferred) {
+			Deferred last = Collections.max(deferred.values(), ORDER);
+			if (ORDER.compare(last, fire) <= 0) {
+				LauncherMetrics.get().dropped();
+				LOG.info("Launcher {} dropped: {} fires are already deferred", fire.key, deferred.size());
+				return;
+			}
+			deferred.remove(last.key);
+			LauncherMetrics.get().dropped();
+		}
+		deferred.put(fire.key, fire);
+		LauncherMetrics.get().deferred();
+		LOG.debug("Launcher {} deferred", fire.key);
+
+		if (!retryScheduled) {
+			retryScheduled = true;
+			scheduleRetry(s);
+		}
+	}
+
+	private static void dropDeferred(LauncherKey key) {
+		if (!deferred.isEmpty() && deferred.remove(key) != null) {
+			LauncherMetrics.get().dropped();
+		}
+	}
+
+	private static void scheduleRetry(Settings s) {
+		Timer.get().schedule(new Runnable() {
+			@Override
+			public void run() {
+				retry();
+			}
+		}, s.retryDelay, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Fire the deferred fires the rate and the queue allow, highest priority and oldest first; count a retry for the
+	 * others.
+	 */
+	static void retry() {
+		Settings s = settings;
+		boolean saturated = s != null && isSaturated(s);
+		List<Deferred> ready = new ArrayList<Deferred>();
+		synchronized (LOCK) {
+			List<Deferred> waiting = new ArrayList<Deferred>(deferred.values());
+			Collections.sort(waiting, ORDER);
+			for (Deferred d : waiting) {
+				if (s == null || (!saturated && ready.size() < s.burst && takeToken(s))) {
+					ready.add(d);
+					deferred.remove(d.key);
+				} else if (++d.retries > s.maxRetries) {
+					deferred.remove(d.key);
+					LauncherMetrics.get().dropped();
+					LOG.info("Launcher {} dropped after {} retries", d.key, s.maxRetries);
+				}
+			}
+			retryScheduled = s != null && !deferred.isEmpty();
+			if (retryScheduled) {
+				scheduleRetry(s);
+			}
+		}
+
+		for (Deferred d : ready) {
+			LauncherTrigger.refire(d.key, d.scheduledTime);
+		}
+	}
+
+	private static boolean takeToken(Settings s) {
+		if (s.ratePerMinute == 0) {
+			return true;
+		}
+		long now = System.currentTimeMillis();
+		if (now > refilledAt) {
+			tokens = Math.min(s.burst, tokens + (now - refilledAt) * s.ratePerMinute / 60000.0);
+			refilledAt = now;
+		}
+		if (tokens < 1) {
+			return false;
+		}
+		tokens--;
+		return true;
+	}
+
+	private static boolean isSaturated(Settings s) {
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null) {
+			return false;
+		}
+		LoadStatistics load = jenkins.overallLoad;
+		if (s.maxQueue > 0 && load.queueLength.getLatest(TimeScale.SEC10) >= s.maxQueue) {
+			return true;
+		}
+		if (s.minIdle > 0) {
+			float idle = load.totalExecutors.getLatest(TimeScale.SEC10)
+					- load.busyExecutors.getLatest(TimeScale.SEC10);
+			if (idle < s.minIdle) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Highest priority first, then oldest first.
+	 */
+	private static final Comparator<Deferred> ORDER = new Comparator<Deferred>() {
+		@Override
+		public int compare(Deferred a, Deferred b) {
+			if (a.priority != b.priority) {
+				return a.priority.ordinal() - b.priority.ordinal();
+			}
+			return a.scheduledTime < b.scheduledTime ? -1 : a.scheduledTime > b.scheduledTime ? 1 : 0;
+		}
+	};
+
+	private static final class Deferred {
+		final LauncherKey key;
+
+		final LauncherPriority priority;
+
+		final long scheduledTime;
+
+		int retries = 0;
+
+		Deferred(LauncherKey key, LauncherPriority priority, long scheduledTime) {
+			this.key = key;
+			this.priority = priority;
+			this.scheduledTime = scheduledTime;
+		}
+	}
+
+	private static final class Settings {
+		final int ratePerMinute;
+
+		final int burst;
+
+		final int maxQueue;
+
+		final int minIdle;
+
+		final int retryDelay;
+
+		final int maxRetries;
+
+		final int maxDeferred;
+
+		Settings(int ratePerMinute, int burst, int maxQueue, int minIdle, int retryDelay, int maxRetries,
+				int maxDeferred) {
+			this.ratePerMinute = ratePerMinute;
+			this.burst = burst;
+			this.maxQueue = maxQueue;
+			this.minIdle = minIdle;
+			this.retryDelay = retryDelay;
+			this.maxRetries = maxRetries;
+			this.maxDeferred = maxDeferred;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Combinations of matrix launcher axes, one pattern per line: <code>platform=linux,locale=fr_FR</code>. A combination
+ * matches a pattern when it has each of its values; an axis missing from the pattern, or given as <code>*</code>,
+ * matches any value.
+ */
+public final class CombinationFilter {
+	/**
+	 * For each pattern, the value required on each axis, <code>null</code> for any.
+	 */
+	private final String[][] patterns;
+
+	private CombinationFilter(String[][] patterns) {
+		this.patterns = patterns;
+	}
+
+	/**
+	 * @param axes names of the axes, in the order of the combination values
+	 * @return the filter, or <code>null</code> if the text has no pattern
+	 * @throws IllegalArgumentException if a pattern is malformed or names an unknown axis
+	 */
+	public static CombinationFilter parse(String text, List<String> axes) {
+		if (text == null) {
+			return null;
+		}
+		List<String[]> patterns = new ArrayList<String[]>();
+		for (String line : text.split("[\\r\\n]+")) {
+			line = line.trim();
+			if (line.length() == 0 || line.startsWith("#")) {
+				continue;
+			}
+			String[] pattern = new String[axes.size()];
+			for (String pair : line.split(",")) {
+				int eq = pair.indexOf('=');
+				if (eq <= 0) {
+					throw new IllegalArgumentException("Expected name=value in " + line);
+				}
+				String name = pair.substring(0, eq).trim();
+				String value = pair.substring(eq + 1).trim();
+				int axis = axes.indexOf(name);
+				if (axis < 0) {
+					throw new IllegalArgumentException("No axis " + name + " in " + line);
+				}
+				pattern[axis] = "*".equals(value) ? null : value;
+			}
+			patterns.add(pattern);
+		}
+		return patterns.isEmpty() ? null : new CombinationFilter(patterns.toArray(new String[patterns.size()][]));
+	}
+
+	/**
+	 * @param values value of each axis
+	 * @return <code>true</code> if at least one pattern matches the combination
+	 */
+	public boolean matches(String[] values) {
+		for (String[] pattern : patterns) {
+			if (matches(pattern, values)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean matches(String[] pattern, String[] values) {
+		for (int i = 0; i < pattern.length; i++) {
+			if (pattern[i] != null && !pattern[i].equals(values[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,334 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process engine: a single timeline of next fire times, ordered in a tree, and one dispatcher thread waiting for
+ * the earliest one.
+ * 
+ * A launcher costs one small entry; parsed cron expressions are shared between launchers using the same expression.
+ * Adding or removing a launcher is O(log n).
+ */
+public class CronHeapScheduler implements LauncherScheduler {
+	private static final Logger LOG = LoggerFactory.getLogger(CronHeapScheduler.class);
+
+	/**
+	 * A fire later than this is a misfire: it runs once and the launcher resumes from now, like the quartz default
+	 * policy for cron triggers.
+	 */
+	private static final long MISFIRE_THRESHOLD = 60000;
+
+	/**
+	 * Due fires waiting for a thread. Beyond, the dispatcher runs the fire itself until threads are free again.
+	 */
+	private static final int QUEUE_CAPACITY = 1000;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition changed = lock.newCondition();
+
+	private final TreeSet<Entry> timeline = new TreeSet<Entry>();
+
+	private final Map<LauncherKey, Entry> entries = new HashMap<LauncherKey, Entry>();
+
+	private final SharedCron.Pool expressions = new SharedCron.Pool();
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Fires taken from the timeline and not run yet.
+	 */
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private long sequence = 0;
+
+	private Thread dispatcher = null;
+
+	private volatile boolean running = true;
+
+	public CronHeapScheduler(int threads) {
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(
+				QUEUE_CAPACITY), new NamingThreadFactory(new DaemonThreadFactory(), "MultiLauncher scheduler"),
+				new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @return current time of this scheduler
+	 */
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * Make the dispatcher read {@link #now()} again: to be called by subclasses moving their clock.
+	 */
+	protected void wakeUp() {
+		lock.lock();
+		try {
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if no fire is due at {@link #now()} and every fire taken from the timeline ran
+	 */
+	boolean isIdle() {
+		lock.lock();
+		try {
+			return inFlight.get() == 0 && (timeline.isEmpty() || timeline.first().next > now());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void schedule(Map<LauncherKey, String> crons) {
+		if (crons.isEmpty()) {
+			return;
+		}
+		lock.lock();
+		try {
+			long now = now();
+			for (Map.Entry<LauncherKey, String> e : crons.entrySet()) {
+				remove(e.getKey());
+				SharedCron cron = expressions.acquire(e.getValue());
+				if (cron == null) {
+					continue;
+				}
+				Entry entry = new Entry(e.getKey(), cron, sequence++);
+				entry.next = cron.nextAfter(now);
+				entries.put(entry.key, entry);
+				if (entry.next > 0) {
+					timeline.add(entry);
+				}
+			}
+			startDispatcher();
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void unschedule(Collection<LauncherKey> keys) {
+		lock.lock();
+		try {
+			for (LauncherKey key : keys) {
+				remove(key);
+			}
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void remove(LauncherKey key) {
+		Entry old = entries.remove(key);
+		if (old != null) {
+			timeline.remove(old);
+			expressions.release(old.cron);
+		}
+	}
+
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int getThreadPoolSize() {
+		return executor.getMaximumPoolSize();
+	}
+
+	@Override
+	public int getActiveThreads() {
+		return executor.getActiveCount();
+	}
+
+	@Override
+	public void setThreads(int threads) {
+		if (threads > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(threads);
+			executor.setCorePoolSize(threads);
+		} else {
+			executor.setCorePoolSize(threads);
+			executor.setMaximumPoolSize(threads);
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		lock.lock();
+		try {
+			running = false;
+			timeline.clear();
+			entries.clear();
+			expressions.clear();
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+		executor.shutdown();
+	}
+
+	private void startDispatcher() {
+		if (dispatcher != null) {
+			return;
+		}
+		dispatcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				dispatch();
+			}
+		}, "MultiLauncher dispatcher");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	private void dispatch() {
+		List<Fire> due = new ArrayList<Fire>();
+		while (running) {
+			lock.lock();
+			try {
+				long now = now();
+				while (!timeline.isEmpty() && timeline.first().next <= now) {
+					Entry entry = timeline.pollFirst();
+					long scheduled = entry.next;
+					if (now - scheduled > MISFIRE_THRESHOLD) {
+						LauncherMetrics.get().misfired();
+						entry.next = entry.cron.nextAfter(now);
+					} else {
+						entry.next = entry.cron.nextAfter(scheduled);
+					}
+					if (entry.next > 0) {
+						timeline.add(entry);
+					}
+					due.add(new Fire(entry.key, scheduled));
+					inFlight.incrementAndGet();
+				}
+				if (due.isEmpty()) {
+					if (timeline.isEmpty()) {
+						changed.await();
+					} else {
+						changed.await(timeline.first().next - now, TimeUnit.MILLISECONDS);
+					}
+					continue;
+				}
+			} catch (InterruptedException e) {
+				LOG.warn("Launcher dispatcher interrupted", e);
+				return;
+			} finally {
+				lock.unlock();
+			}
+
+			for (Fire fire : due) {
+				try {
+					executor.execute(fire);
+				} catch (RejectedExecutionException e) {
+					// Queue full, or executor shut down: the dispatcher must survive it, and the fire still runs
+					// unless the engine is shut down as well.
+					if (running) {
+						LOG.debug("Scheduler executor refused the fire of {}, running it on the dispatcher", fire.key);
+						try {
+							fire.run();
+						} catch (RuntimeException f) {
+							LOG.error("Cannot fire " + fire.key, f);
+						}
+					} else {
+						inFlight.decrementAndGet();
+					}
+				}
+			}
+			due.clear();
+		}
+	}
+
+	private static final class Entry implements Comparable<Entry> {
+		private final LauncherKey key;
+		private final SharedCron cron;
+		private final long sequence;
+		private long next;
+
+		private Entry(LauncherKey key, SharedCron cron, long sequence) {
+			this.key = key;
+			this.cron = cron;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			if (next != o.next) {
+				return next < o.next ? -1 : 1;
+			}
+			return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+		}
+	}
+
+	private final class Fire implements Runnable {
+		private final LauncherKey key;
+		private final long scheduled;
+
+		private Fire(LauncherKey key, long scheduled) {
+			this.key = key;
+			this.scheduled = scheduled;
+		}
+
+		@Override
+		public void run() {
+			try {
+				LauncherTrigger.fire(key, scheduled);
+			} finally {
+				inFlight.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Gather fires landing in the same short window and put them in the build queue together, under a single queue lock.
+ * 
+ * With a window of 0, every fire is put in the queue right away.
+ */
+public final class FireBatcher {
+	private static final Logger LOG = LoggerFactory.getLogger(FireBatcher.class);
+
+	private static final Object LOCK = new Object();
+
+	private static List<Fire> pending = new ArrayList<Fire>();
+
+	private static boolean flushScheduled = false;
+
+	private static volatile long windowMillis = 100;
+
+	private static volatile int maxBatchSize = 100;
+
+	private FireBatcher() {
+	}
+
+	public static void configure(long window, int maxBatch) {
+		windowMillis = Math.max(0, window);
+		maxBatchSize = Math.max(1, maxBatch);
+	}
+
+	public static void submit(AbstractProject<?, ?> project, Action... actions) {
+		submit(project, null, actions);
+	}
+
+	/**
+	 * @param listener told about the queue item of this fire once the batch is scheduled, may be <code>null</code>
+	 */
+	public static void submit(AbstractProject<?, ?> project, Listener listener, Action... actions) {
+		submit(new Fire(project, listener, actions));
+	}
+
+	public static void submit(Fire fire) {
+		if (windowMillis <= 0) {
+			schedule(Collections.singletonList(fire));
+			return;
+		}
+
+		List<Fire> full = null;
+		boolean scheduleFlush = false;
+		synchronized (LOCK) {
+			pending.add(fire);
+			if (pending.size() >= maxBatchSize) {
+				full = drain();
+			} else if (!flushScheduled) {
+				flushScheduled = true;
+				scheduleFlush = true;
+			}
+		}
+
+		if (full != null) {
+			schedule(full);
+		} else if (scheduleFlush) {
+			Timer.get().schedule(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			}, windowMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Put the fires in the queue right away, by batches of at most the maximum batch size, bypassing the window: used
+	 * for the builds of a matrix launcher, which are all known at once.
+	 */
+	public static void submitAll(List<Fire> fires) {
+		int size = maxBatchSize;
+		for (int from = 0; from < fires.size(); from += size) {
+			schedule(fires.subList(from, Math.min(fires.size(), from + size)));
+		}
+	}
+
+	/**
+	 * Put every pending fire in the queue, by batches of at most the maximum batch size.
+	 */
+	public static void flush() {
+		while (true) {
+			List<Fire> batch;
+			synchronized (LOCK) {
+				flushScheduled = false;
+				if (pending.isEmpty()) {
+					return;
+				}
+				batch = drain();
+			}
+			schedule(batch);
+		}
+	}
+
+	private static List<Fire> drain() {
+		List<Fire> batch;
+		if (pending.size() <= maxBatchSize) {
+			batch = pending;
+			pending = new ArrayList<Fire>();
+		} else {
+			List<Fire> head = pending.subList(0, maxBatchSize);
+			batch = new ArrayList<Fire>(head);
+			head.clear();
+		}
+		return batch;
+	}
+
+	private static void schedule(final List<Fire> batch) {
+		final Queue queue = Jenkins.getInstance().getQueue();
+		// Queue lock is reentrant: each schedule2 below reuses it, and maintenance passes they request are coalesced.
+		Queue.withLock(new Runnable() {
+			@Override
+			public void run() {
+				for (Fire fire : batch) {
+					try {
+						Queue.Item item = queue.schedule2(fire.project, 0, fire.actions).getItem();
+						if (fire.listener != null) {
+							fire.listener.scheduled(item);
+						}
+					} catch (RuntimeException e) {
+						LOG.error("Cannot put " + fire.project.getFullName() + " in the build queue", e);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Called under the queue lock once a fire is put in the queue.
+	 */
+	public interface Listener {
+		/**
+		 * @param item queue item of the fire (possibly an existing item it was merged into), or <code>null</code> if
+		 *            the queue refused it
+		 */
+		void scheduled(Queue.Item item);
+	}
+
+	public static final class Fire {
+		private final AbstractProject<?, ?> project;
+		private final Listener listener;
+		private final List<Action> actions;
+
+		/**
+		 * @param listener told about the queue item of this fire, may be <code>null</code>
+		 */
+		public Fire(AbstractProject<?, ?> project, Listener listener, Action... actions) {
+			this.project = project;
+			this.listener = listener;
+			this.actions = Arrays.asList(actions);
+		}
+	}
+}
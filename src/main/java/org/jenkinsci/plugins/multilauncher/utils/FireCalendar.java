@@ -0,0 +1,268 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Index of the next fire time of every registered launcher, whatever the engine firing them, to answer "what will
+ * fire next" without evaluating every cron expression.
+ * 
+ * The index is kept in fire time order and maintained incrementally: registration adds or removes single entries,
+ * and entries whose fire time has passed are moved to their next fire time when the calendar is read. A query walks
+ * the index from its head and only computes the following fire times of the launchers it returns.
+ * 
+ * Readers do not lock: entries are immutable and the index is a concurrent skip list, so a query may be streamed
+ * while launchers are registered.
+ */
+public final class FireCalendar {
+	private static final FireCalendar INSTANCE = new FireCalendar();
+
+	private final ConcurrentSkipListSet<Entry> timeline = new ConcurrentSkipListSet<Entry>();
+
+	private final ConcurrentMap<LauncherKey, Entry> entries = new ConcurrentHashMap<LauncherKey, Entry>();
+
+	/**
+	 * Guarded by this.
+	 */
+	private final SharedCron.Pool expressions = new SharedCron.Pool();
+
+	private long sequence = 0;
+
+	FireCalendar() {
+	}
+
+	public static FireCalendar get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Visit the fires returned by {@link FireCalendar#upcoming(long, long, int, Visitor)}.
+	 */
+	public interface Visitor {
+		/**
+		 * @return false to leave the fires of this launcher out of the result
+		 */
+		boolean accept(LauncherKey key);
+
+		void visit(LauncherKey key, long time) throws IOException;
+	}
+
+	/**
+	 * @param crons (resolved) cron expression by launcher, replacing the current ones
+	 */
+	public synchronized void schedule(Map<LauncherKey, String> crons) {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<LauncherKey, String> e : crons.entrySet()) {
+			remove(e.getKey());
+			SharedCron cron = expressions.acquire(e.getValue());
+			if (cron == null) {
+				continue;
+			}
+			add(new Entry(e.getKey(), cron, cron.nextAfter(now), sequence++));
+		}
+	}
+
+	public synchronized void unschedule(Collection<LauncherKey> keys) {
+		for (LauncherKey key : keys) {
+			remove(key);
+		}
+	}
+
+	public synchronized void clear() {
+		timeline.clear();
+		entries.clear();
+		expressions.clear();
+	}
+
+	/**
+	 * @return number of launchers in the calendar
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return next fire time of the launcher, or 0 if it is not registered
+	 */
+	public long getNextFire(LauncherKey key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return 0;
+		}
+		long now = System.currentTimeMillis();
+		return entry.next > now ? entry.next : entry.cron.nextAfter(now);
+	}
+
+	/**
+	 * Visit, in time order, the fires planned in <code>[from, to]</code>.
+	 * 
+	 * @param limit maximum number of fires visited
+	 * @return number of fires visited
+	 */
+	public int upcoming(long from, long to, int limit, Visitor visitor) throws IOException {
+		advance(System.currentTimeMillis());
+
+		// Walk the index for the first fire of each launcher, and merge in the following fires of the launchers
+		// already returned.
+		PriorityQueue<Entry> following = new PriorityQueue<Entry>();
+		Iterator<Entry> it = timeline.iterator();
+		Entry head = nextAccepted(it, from, to, visitor, following);
+		int count = 0;
+		while (count < limit) {
+			Entry entry;
+			if (head != null && (following.isEmpty() || head.compareTo(following.peek()) < 0)) {
+				entry = head;
+				head = nextAccepted(it, from, to, visitor, following);
+			} else if (!following.isEmpty()) {
+				entry = following.poll();
+			} else {
+				break;
+			}
+			visitor.visit(entry.key, entry.next);
+			count++;
+
+			long next = entry.cron.nextAfter(entry.next);
+			if (next > 0 && next <= to) {
+				following.add(new Entry(entry.key, entry.cron, next, entry.sequence));
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the next entry of the index firing within <code>[from, to]</code> and accepted by the visitor, or null
+	 */
+	private static Entry nextAccepted(Iterator<Entry> it, long from, long to, Visitor visitor,
+			PriorityQueue<Entry> following) {
+		while (it.hasNext()) {
+			Entry entry = it.next();
+			if (entry.next > to) {
+				return null;
+			}
+			if (!visitor.accept(entry.key)) {
+				continue;
+			}
+			if (entry.next >= from) {
+				return entry;
+			}
+			// Fire before the window: its first fire in the window comes later, out of index order.
+			long next = entry.cron.nextAfter(from - 1);
+			if (next > 0 && next <= to) {
+				following.add(new Entry(entry.key, entry.cron, next, entry.sequence));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the registered launchers accepted by the visitor, grouped by their shared cron expression
+	 */
+	Map<SharedCron, List<LauncherKey>> byExpression(Visitor visitor) {
+		Map<SharedCron, List<LauncherKey>> groups = new IdentityHashMap<SharedCron, List<LauncherKey>>();
+		for (Entry entry : entries.values()) {
+			if (!visitor.accept(entry.key)) {
+				continue;
+			}
+			List<LauncherKey> keys = groups.get(entry.cron);
+			if (keys == null) {
+				keys = new ArrayList<LauncherKey>();
+				groups.put(entry.cron, keys);
+			}
+			keys.add(entry.key);
+		}
+		return groups;
+	}
+
+	/**
+	 * Move the entries whose fire time has passed to their next fire time.
+	 */
+	private synchronized void advance(long now) {
+		while (!timeline.isEmpty()) {
+			Entry first = timeline.first();
+			if (first.next > now) {
+				return;
+			}
+			timeline.remove(first);
+			Entry moved = new Entry(first.key, first.cron, first.cron.nextAfter(now), first.sequence);
+			if (moved.next > 0) {
+				timeline.add(moved);
+				entries.put(moved.key, moved);
+			} else {
+				// Expression without any future fire, e.g. restricted to a past year.
+				entries.remove(first.key);
+				expressions.release(first.cron);
+			}
+		}
+	}
+
+	private void add(Entry entry) {
+		if (entry.next <= 0) {
+			expressions.release(entry.cron);
+			return;
+		}
+		entries.put(entry.key, entry);
+		timeline.add(entry);
+	}
+
+	private void remove(LauncherKey key) {
+		Entry old = entries.remove(key);
+		if (old != null) {
+			timeline.remove(old);
+			expressions.release(old.cron);
+		}
+	}
+
+	private static final class Entry implements Comparable<Entry> {
+		private final LauncherKey key;
+		private final SharedCron cron;
+		private final long next;
+		private final long sequence;
+
+		private Entry(LauncherKey key, SharedCron cron, long next, long sequence) {
+			this.key = key;
+			this.cron = cron;
+			this.next = next;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			if (next != o.next) {
+				return next < o.next ? -1 : 1;
+			}
+			return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import hudson.model.ParameterValue;
+import hudson.model.Queue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jenkinsci.plugins.multilauncher.utils.LauncherTrigger.ParameterTimerTriggerCause;
+
+/**
+ * Collapse the fires of a project resolving to the same parameter values within a window into a single build.
+ * 
+ * The first fire is put in the queue as usual; an identical fire landing before the window ends, while that build
+ * has not started yet, only adds its launcher to the cause of the build.
+ * 
+ * Values are compared with their own <code>equals</code>: a fire with a parameter type that does not define one is
+ * never collapsed, rather than collapsed on the parameter name alone.
+ */
+public final class FireDeduplicator {
+	private static final ConcurrentMap<Fingerprint, Fire> FIRES = new ConcurrentHashMap<Fingerprint, Fire>();
+
+	private static final ConcurrentMap<Class<?>, Boolean> COMPARABLE = new ConcurrentHashMap<Class<?>, Boolean>();
+
+	private static volatile long windowMillis = 0;
+
+	private static volatile long lastPurge = 0;
+
+	private FireDeduplicator() {
+	}
+
+	/**
+	 * @param window milliseconds during which identical fires are collapsed, 0 to disable
+	 */
+	public static void configure(long window) {
+		windowMillis = Math.max(0, window);
+		if (windowMillis == 0) {
+			FIRES.clear();
+		}
+	}
+
+	/**
+	 * Join the pending fire with the same values, or register a new one.
+	 * 
+	 * @return the fire to put in the queue, <code>null</code> if an identical pending fire now covers this launcher
+	 */
+	public static Fire join(String projectFullName, List<ParameterValue> values, String launcher) {
+		long window = windowMillis;
+		if (window == 0 || !comparable(values)) {
+			return new Fire(null, new ParameterTimerTriggerCause(launcher), 0);
+		}
+
+		long now = System.currentTimeMillis();
+		purge(now, window);
+		Fingerprint fingerprint = new Fingerprint(projectFullName, values);
+		Fire fire = new Fire(fingerprint, new ParameterTimerTriggerCause(launcher), now + window);
+		while (true) {
+			Fire pending = FIRES.putIfAbsent(fingerprint, fire);
+			if (pending == null) {
+				return fire;
+			}
+			if (pending.isPending(now)) {
+				pending.cause.addLauncher(launcher);
+				return null;
+			}
+			if (FIRES.replace(fingerprint, pending, fire)) {
+				return fire;
+			}
+		}
+	}
+
+	public static void forget(String projectFullName) {
+		for (Iterator<Fingerprint> it = FIRES.keySet().iterator(); it.hasNext();) {
+			if (it.next().project.equals(projectFullName)) {
+				it.remove();
+			}
+		}
+	}
+
+	private static void purge(long now, long window) {
+		if (now - lastPurge < window) {
+			return;
+		}
+		lastPurge = now;
+		for (Iterator<Fire> it = FIRES.values().iterator(); it.hasNext();) {
+			if (!it.next().isPending(now)) {
+				it.remove();
+			}
+		}
+	}
+
+	private static boolean comparable(List<ParameterValue> values) {
+		for (ParameterValue value : values) {
+			Class<?> type = value.getClass();
+			Boolean overrides = COMPARABLE.get(type);
+			if (overrides == null) {
+				try {
+					overrides = type.getMethod("equals", Object.class).getDeclaringClass() != ParameterValue.class;
+				} catch (NoSuchMethodException e) {
+					overrides = false;
+				}
+				COMPARABLE.put(type, overrides);
+			}
+			if (!overrides) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A fire on its way to the queue, that identical fires can join until its build starts.
+	 */
+	public static final class Fire {
+		private final Fingerprint fingerprint;
+
+		private final ParameterTimerTriggerCause cause;
+
+		private final long expiresAt;
+
+		private volatile Queue.Item item;
+
+		private volatile boolean released = false;
+
+		private Fire(Fingerprint fingerprint, ParameterTimerTriggerCause cause, long expiresAt) {
+			this.fingerprint = fingerprint;
+			this.cause = cause;
+			this.expiresAt = expiresAt;
+		}
+
+		public ParameterTimerTriggerCause getCause() {
+			return cause;
+		}
+
+		/**
+		 * The fire has been put in the queue as this item, or not at all when <code>null</code>.
+		 */
+		public void scheduled(Queue.Item item) {
+			if (item == null) {
+				release();
+			} else {
+				this.item = item;
+			}
+		}
+
+		/**
+		 * The fire will not be put in the queue: identical fires no longer join it.
+		 */
+		public void release() {
+			released = true;
+			if (fingerprint != null) {
+				FIRES.remove(fingerprint, this);
+			}
+		}
+
+		private boolean isPending(long now) {
+			if (released || now >= expiresAt) {
+				return false;
+			}
+			Queue.Item queued = item;
+			return queued == null
+					|| !(queued.getFuture().isCancelled() || queued.getFuture().getStartCondition().isDone());
+		}
+	}
+
+	private static final class Fingerprint {
+		private final String project;
+
+		private final List<ParameterValue> values;
+
+		private final int hash;
+
+		Fingerprint(String project, List<ParameterValue> values) {
+			this.project = project;
+			this.values = new ArrayList<ParameterValue>(values);
+			this.hash = 31 * project.hashCode() + this.values.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Fingerprint)) {
+				return false;
+			}
+			Fingerprint other = (Fingerprint) o;
+			return hash == other.hash && project.equals(other.project) && values.equals(other.values);
+		}
+	}
+}
@@ -0,0 +1,407 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Last fires of each launcher with the build they started, to show the recent runs of a launcher without loading
+ * any build record.
+ * 
+ * Each launcher keeps its {@link #SIZE} last fires in memory. Changes are appended to a file under JENKINS_HOME a
+ * few seconds later, off the fire path, and the file is rewritten with the current fires when it grows too much.
+ */
+public final class FireHistory {
+	private static final Logger LOG = LoggerFactory.getLogger(FireHistory.class);
+
+	private static final String FILE_NAME = "multi-launcher-history.bin";
+
+	/**
+	 * Fires kept per launcher.
+	 */
+	public static final int SIZE = 20;
+
+	private static final long FLUSH_DELAY = 5;
+
+	private static final int MIN_COMPACTION_RECORDS = 10000;
+
+	private static FireHistory INSTANCE;
+
+	private final File file;
+
+	private final ConcurrentMap<LauncherKey, Ring> rings = new ConcurrentHashMap<LauncherKey, Ring>();
+
+	/**
+	 * Changes not written yet, guarded by <code>this</code>.
+	 */
+	private List<Change> pending = new ArrayList<Change>();
+
+	private boolean flushScheduled = false;
+
+	private DataOutputStream out = null;
+
+	private int appended = 0;
+
+	FireHistory(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return the history of this instance, read from disk on first call
+	 */
+	public static synchronized FireHistory get() {
+		if (INSTANCE == null) {
+			INSTANCE = new FireHistory(new File(Jenkins.getInstance().getRootDir(), FILE_NAME));
+			INSTANCE.load();
+		}
+		return INSTANCE;
+	}
+
+	/**
+	 * The fire of the launcher has been put in the queue.
+	 */
+	public void queued(LauncherKey key, long fireTime, long queueId) {
+		Entry entry = new Entry(fireTime, queueId, -1, null);
+		ring(key).merge(entry);
+		append(key, entry);
+	}
+
+	/**
+	 * A build started by the launcher started. A launcher collapsed into the build of another one gets its entry now.
+	 */
+	public void started(LauncherKey key, long queueId, int number, long startTime) {
+		append(key, ring(key).update(queueId, number, null, startTime));
+	}
+
+	public void completed(LauncherKey key, long queueId, int number, String result, long startTime) {
+		append(key, ring(key).update(queueId, number, result, startTime));
+	}
+
+	/**
+	 * @return number of launchers with a history
+	 */
+	int size() {
+		return rings.size();
+	}
+
+	/**
+	 * @return last fires of the launcher, most recent first
+	 */
+	public List<Entry> getEntries(LauncherKey key) {
+		Ring ring = rings.get(key);
+		return ring == null ? Collections.<Entry> emptyList() : ring.newestFirst();
+	}
+
+	/**
+	 * Forget the launchers of a project. Their records leave the file at the next compaction.
+	 */
+	public void forget(String projectFullName) {
+		for (LauncherKey key : rings.keySet()) {
+			if (key.getProject().equals(projectFullName)) {
+				rings.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Keep the fires of a renamed or moved project. They are appended under the new name with the next flush, the
+	 * records under the old name leave the file at the next compaction.
+	 */
+	public void rename(String oldFullName, String newFullName) {
+		for (Map.Entry<LauncherKey, Ring> e : rings.entrySet()) {
+			if (e.getKey().getProject().equals(oldFullName)) {
+				LauncherKey renamed = new LauncherKey(newFullName, e.getKey().getLauncher());
+				rings.put(renamed, e.getValue());
+				rings.remove(e.getKey());
+				List<Entry> entries = e.getValue().newestFirst();
+				for (int i = entries.size() - 1; i >= 0; i--) {
+					append(renamed, entries.get(i));
+				}
+			}
+		}
+	}
+
+	private Ring ring(LauncherKey key) {
+		Ring ring = rings.get(key);
+		if (ring == null) {
+			Ring created = new Ring();
+			ring = rings.putIfAbsent(key, created);
+			if (ring == null) {
+				ring = created;
+			}
+		}
+		return ring;
+	}
+
+	private synchronized void append(LauncherKey key, Entry entry) {
+		pending.add(new Change(key, entry));
+		if (!flushScheduled) {
+			flushScheduled = true;
+			Timer.get().schedule(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			}, FLUSH_DELAY, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Write the pending changes.
+	 */
+	public synchronized void flush() {
+		flushScheduled = false;
+		if (pending.isEmpty()) {
+			return;
+		}
+		List<Change> changes = pending;
+		pending = new ArrayList<Change>();
+		try {
+			DataOutputStream o = output();
+			for (Change c : changes) {
+				write(o, c.key, c.entry);
+			}
+			o.flush();
+			appended += changes.size();
+			if (appended > Math.max(MIN_COMPACTION_RECORDS, 2 * SIZE * rings.size())) {
+				compact();
+			}
+		} catch (IOException e) {
+			LOG.warn("Cannot write launcher fire history " + file, e);
+			close();
+		}
+	}
+
+	private synchronized void load() {
+		if (file.exists()) {
+			DataInputStream in = null;
+			try {
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				while (true) {
+					LauncherKey key = new LauncherKey(in.readUTF(), in.readUTF());
+					long fireTime = in.readLong();
+					long queueId = in.readLong();
+					int number = in.readInt();
+					String result = in.readUTF();
+					ring(key).merge(new Entry(fireTime, queueId, number, result.length() == 0 ? null : result));
+				}
+			} catch (EOFException e) {
+				// End of the history, possibly in the middle of a record written during a crash.
+			} catch (IOException e) {
+				LOG.warn("Cannot read launcher fire history " + file, e);
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+		try {
+			compact();
+		} catch (IOException e) {
+			LOG.warn("Cannot compact launcher fire history " + file, e);
+		}
+	}
+
+	private void compact() throws IOException {
+		close();
+		// The rings already hold the pending changes.
+		pending.clear();
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream o = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			for (Map.Entry<LauncherKey, Ring> e : rings.entrySet()) {
+				List<Entry> entries = e.getValue().newestFirst();
+				for (int i = entries.size() - 1; i >= 0; i--) {
+					write(o, e.getKey(), entries.get(i));
+				}
+			}
+		} finally {
+			o.close();
+		}
+		if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+			throw new IOException("Cannot replace " + file + " by " + tmp);
+		}
+		appended = 0;
+	}
+
+	private DataOutputStream output() throws FileNotFoundException {
+		if (out == null) {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		}
+		return out;
+	}
+
+	private static void write(DataOutputStream o, LauncherKey key, Entry entry) throws IOException {
+		o.writeUTF(key.getProject());
+		o.writeUTF(key.getLauncher());
+		o.writeLong(entry.fireTime);
+		o.writeLong(entry.queueId);
+		o.writeInt(entry.buildNumber);
+		o.writeUTF(entry.result == null ? "" : entry.result);
+	}
+
+	private void close() {
+		IOUtils.closeQuietly(out);
+		out = null;
+	}
+
+	/**
+	 * A fire of a launcher and what became of it.
+	 */
+	public static final class Entry {
+		private final long fireTime;
+
+		private final long queueId;
+
+		private final int buildNumber;
+
+		private final String result;
+
+		Entry(long fireTime, long queueId, int buildNumber, String result) {
+			this.fireTime = fireTime;
+			this.queueId = queueId;
+			this.buildNumber = buildNumber;
+			this.result = result == null ? null : result.intern();
+		}
+
+		public long getFireTime() {
+			return fireTime;
+		}
+
+		public long getQueueId() {
+			return queueId;
+		}
+
+		/**
+		 * @return number of the build, or -1 while it has not started
+		 */
+		public int getBuildNumber() {
+			return buildNumber;
+		}
+
+		/**
+		 * @return result of the build, or <code>null</code> while it has not completed
+		 */
+		public String getResult() {
+			return result;
+		}
+
+		public JSONObject toJSON() {
+			JSONObject json = new JSONObject().element("fireTime", fireTime).element("queueId", queueId);
+			if (buildNumber >= 0) {
+				json.element("build", buildNumber);
+			}
+			if (result != null) {
+				json.element("result", result);
+			}
+			return json;
+		}
+	}
+
+	/**
+	 * The {@link FireHistory#SIZE} last fires of a launcher.
+	 */
+	private static final class Ring {
+		private final Entry[] entries = new Entry[SIZE];
+
+		private int next = 0;
+
+		private int size = 0;
+
+		/**
+		 * Replace the entry of the same queue item, or add it as the most recent one.
+		 */
+		synchronized void merge(Entry entry) {
+			int i = indexOf(entry.queueId);
+			if (i >= 0) {
+				entries[i] = entry;
+				return;
+			}
+			entries[next] = entry;
+			next = (next + 1) % SIZE;
+			size = Math.min(size + 1, SIZE);
+		}
+
+		/**
+		 * @return the entry of the queue item, with the build number and result
+		 */
+		synchronized Entry update(long queueId, int number, String result, long timeIfMissing) {
+			int i = indexOf(queueId);
+			Entry entry = new Entry(i >= 0 ? entries[i].fireTime : timeIfMissing, queueId, number, result);
+			merge(entry);
+			return entry;
+		}
+
+		synchronized List<Entry> newestFirst() {
+			List<Entry> list = new ArrayList<Entry>(size);
+			for (int k = 1; k <= size; k++) {
+				list.add(entries[(next - k + SIZE) % SIZE]);
+			}
+			return list;
+		}
+
+		private int indexOf(long queueId) {
+			for (int k = 0; k < size; k++) {
+				int i = (next - 1 - k + SIZE) % SIZE;
+				if (entries[i].queueId == queueId) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	private static final class Change {
+		private final LauncherKey key;
+
+		private final Entry entry;
+
+		private Change(LauncherKey key, Entry entry) {
+			this.key = key;
+			this.entry = entry;
+		}
+	}
+}
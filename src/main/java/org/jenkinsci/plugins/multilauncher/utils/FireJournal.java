@@ -0,0 +1,274 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of the last fire time of each launcher, kept under JENKINS_HOME.
+ * 
+ * A fire only updates memory. The launchers fired since the last write are appended a moment later, off the fire
+ * path, as one small record each (project, launcher id, scheduled time). The file is read once at startup and
+ * rewritten with one record per launcher when it grows too much.
+ */
+public final class FireJournal {
+	private static final Logger LOG = LoggerFactory.getLogger(FireJournal.class);
+
+	private static final String FILE_NAME = "multi-launcher-journal.bin";
+
+	private static final int MIN_COMPACTION_RECORDS = 10000;
+
+	private static final long FLUSH_DELAY = 1;
+
+	private static volatile FireJournal INSTANCE;
+
+	private final File file;
+
+	private final ConcurrentMap<LauncherKey, Long> lastFires = new ConcurrentHashMap<LauncherKey, Long>();
+
+	/**
+	 * Launchers fired since the last write.
+	 */
+	private final ConcurrentMap<LauncherKey, Boolean> dirty = new ConcurrentHashMap<LauncherKey, Boolean>();
+
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	/**
+	 * Output stream and compaction state, guarded by <code>this</code>.
+	 */
+	private DataOutputStream out = null;
+
+	private int appended = 0;
+
+	FireJournal(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return the journal of this instance, read from disk on first call
+	 */
+	public static FireJournal get() {
+		FireJournal journal = INSTANCE;
+		if (journal != null) {
+			return journal;
+		}
+		synchronized (FireJournal.class) {
+			if (INSTANCE == null) {
+				journal = new FireJournal(new File(Jenkins.getInstance().getRootDir(), FILE_NAME));
+				journal.load();
+				INSTANCE = journal;
+			}
+			return INSTANCE;
+		}
+	}
+
+	/**
+	 * @return time of the last recorded fire, or <code>null</code> if the launcher never fired
+	 */
+	public Long getLastFire(LauncherKey key) {
+		return lastFires.get(key);
+	}
+
+	public void record(LauncherKey key, long time) {
+		while (true) {
+			Long previous = lastFires.putIfAbsent(key, time);
+			if (previous == null) {
+				break;
+			}
+			if (previous >= time) {
+				return;
+			}
+			if (lastFires.replace(key, previous, time)) {
+				break;
+			}
+		}
+		dirty.put(key, Boolean.TRUE);
+		scheduleFlush();
+	}
+
+	private void scheduleFlush() {
+		if (flushScheduled.compareAndSet(false, true)) {
+			Timer.get().schedule(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			}, FLUSH_DELAY, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Append the launchers fired since the last write, and compact the file if it grew too much.
+	 */
+	public synchronized void flush() {
+		flushScheduled.set(false);
+		if (dirty.isEmpty()) {
+			return;
+		}
+		try {
+			DataOutputStream o = output();
+			for (LauncherKey key : dirty.keySet()) {
+				dirty.remove(key);
+				Long time = lastFires.get(key);
+				if (time != null) {
+					write(o, key, time);
+					appended++;
+				}
+			}
+			o.flush();
+			if (appended > Math.max(MIN_COMPACTION_RECORDS, 4 * lastFires.size())) {
+				compact();
+			}
+		} catch (IOException e) {
+			LOG.warn("Cannot write launcher fire journal " + file, e);
+			close();
+		}
+	}
+
+	/**
+	 * @return number of launchers in the journal
+	 */
+	int size() {
+		return lastFires.size();
+	}
+
+	/**
+	 * Forget the launchers of a project. Their records leave the file at the next compaction.
+	 */
+	public void forget(String projectFullName) {
+		for (LauncherKey key : lastFires.keySet()) {
+			if (key.getProject().equals(projectFullName)) {
+				lastFires.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Keep the last fires of a renamed or moved project, so that it still catches up after a restart. They are
+	 * appended under the new name with the next flush, the records under the old name leave the file at the next
+	 * compaction.
+	 */
+	public void rename(String oldFullName, String newFullName) {
+		boolean moved = false;
+		for (Map.Entry<LauncherKey, Long> e : lastFires.entrySet()) {
+			if (e.getKey().getProject().equals(oldFullName)) {
+				LauncherKey renamed = new LauncherKey(newFullName, e.getKey().getLauncher());
+				lastFires.put(renamed, e.getValue());
+				dirty.put(renamed, Boolean.TRUE);
+				lastFires.remove(e.getKey());
+				dirty.remove(e.getKey());
+				moved = true;
+			}
+		}
+		if (moved) {
+			scheduleFlush();
+		}
+	}
+
+	private synchronized void load() {
+		if (file.exists()) {
+			DataInputStream in = null;
+			try {
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				while (true) {
+					LauncherKey key = new LauncherKey(in.readUTF(), in.readUTF());
+					long time = in.readLong();
+					Long previous = lastFires.get(key);
+					if (previous == null || previous < time) {
+						lastFires.put(key, time);
+					}
+				}
+			} catch (EOFException e) {
+				// End of the journal, possibly in the middle of a record written during a crash.
+			} catch (IOException e) {
+				LOG.warn("Cannot read launcher fire journal " + file, e);
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+		try {
+			compact();
+		} catch (IOException e) {
+			LOG.warn("Cannot compact launcher fire journal " + file, e);
+		}
+	}
+
+	private void compact() throws IOException {
+		close();
+		// Every last fire is written below.
+		dirty.clear();
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream o = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			for (Map.Entry<LauncherKey, Long> e : lastFires.entrySet()) {
+				write(o, e.getKey(), e.getValue());
+			}
+		} finally {
+			o.close();
+		}
+		if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+			throw new IOException("Cannot replace " + file + " by " + tmp);
+		}
+		appended = 0;
+	}
+
+	private DataOutputStream output() throws FileNotFoundException {
+		if (out == null) {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		}
+		return out;
+	}
+
+	private static void write(DataOutputStream o, LauncherKey key, long time) throws IOException {
+		o.writeUTF(key.getProject());
+		o.writeUTF(key.getLauncher());
+		o.writeLong(time);
+	}
+
+	private void close() {
+		IOUtils.closeQuietly(out);
+		out = null;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent hash ring of the cluster nodes: each launcher belongs to the first node point after its own hash, so a
+ * node joining or leaving only moves about 1/n of the launchers.
+ * 
+ * Immutable: a new ring is built when the live nodes change.
+ */
+public final class HashRing {
+	/**
+	 * Points per node, to even out the share of each node.
+	 */
+	static final int POINTS = 64;
+
+	private final TreeMap<Long, String> points = new TreeMap<Long, String>();
+
+	private final Collection<String> nodes;
+
+	public HashRing(Collection<String> nodes) {
+		TreeSet<String> sorted = new TreeSet<String>(nodes);
+		for (String node : sorted) {
+			for (int i = 0; i < POINTS; i++) {
+				points.put(hash(node + "#" + i), node);
+			}
+		}
+		this.nodes = Collections.unmodifiableCollection(sorted);
+	}
+
+	public Collection<String> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return node the launcher belongs to, or null if the ring is empty
+	 */
+	public String owner(LauncherKey key) {
+		if (points.isEmpty()) {
+			return null;
+		}
+		Map.Entry<Long, String> e = points.ceilingEntry(hash(key.toString()));
+		return e == null ? points.firstEntry().getValue() : e.getValue();
+	}
+
+	/**
+	 * FNV-1a followed by a 64 bit finalizer: stable across JVMs and well spread on close strings.
+	 */
+	static long hash(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolve the Jenkins-like <code>H</code> tokens of a quartz cron expression into stable values.
+ * 
+ * <code>H</code>, <code>H(a-b)</code>, <code>H/n</code> and <code>H(a-b)/n</code> are replaced by a value hashed from a
+ * seed (project full name and launcher id), so that launchers sharing an expression spread over the period instead
+ * of all firing at the same second, and keep the same time from one restart to the next.
+ */
+public final class HashedCron {
+	private static final Pattern TOKEN = Pattern.compile("H(?:\\((\\d+)-(\\d+)\\))?(?:/(\\d+))?");
+
+	/**
+	 * An item starting with H: day names such as THU are not tokens.
+	 */
+	private static final Pattern HASHED = Pattern.compile("(?:^|[\\s,])H");
+
+	/**
+	 * Range of each field: seconds, minutes, hours, day of month (up to 28 to exist every month), month, day of week.
+	 */
+	private static final int[][] RANGES = { { 0, 59 }, { 0, 59 }, { 0, 23 }, { 1, 28 }, { 1, 12 }, { 1, 7 } };
+
+	private HashedCron() {
+	}
+
+	public static boolean isHashed(String cron) {
+		return cron != null && HASHED.matcher(cron).find();
+	}
+
+	/**
+	 * @return seed used to resolve the expressions of a launcher
+	 */
+	public static String seed(String projectFullName, String launcherId) {
+		return projectFullName + "#" + launcherId;
+	}
+
+	/**
+	 * @param cron quartz cron expression, possibly with <code>H</code> tokens
+	 * @param seed value the tokens are hashed from
+	 * @return the expression with every <code>H</code> token replaced
+	 * @throws IllegalArgumentException if a token is misplaced or malformed
+	 */
+	public static String resolve(String cron, String seed) {
+		if (!isHashed(cron)) {
+			return cron;
+		}
+
+		String[] fields = cron.trim().split("\\s+");
+		StringBuilder resolved = new StringBuilder(cron.length());
+		for (int f = 0; f < fields.length; f++) {
+			if (f > 0) {
+				resolved.append(' ');
+			}
+			if (!HASHED.matcher(fields[f]).find()) {
+				resolved.append(fields[f]);
+				continue;
+			}
+			if (f >= RANGES.length) {
+				throw new IllegalArgumentException("H is not supported in field " + (f + 1) + " of " + cron);
+			}
+
+			String[] items = fields[f].split(",", -1);
+			for (int i = 0; i < items.length; i++) {
+				if (i > 0) {
+					resolved.append(',');
+				}
+				resolved.append(items[i].startsWith("H") ? token(items[i], f, seed) : items[i]);
+			}
+		}
+		return resolved.toString();
+	}
+
+	private static String token(String item, int field, String seed) {
+		Matcher m = TOKEN.matcher(item);
+		if (!m.matches()) {
+			throw new IllegalArgumentException("Invalid H token " + item);
+		}
+
+		int min = RANGES[field][0];
+		int max = RANGES[field][1];
+		if (m.group(1) != null) {
+			int a = Integer.parseInt(m.group(1));
+			int b = Integer.parseInt(m.group(2));
+			if (a > b || a < min || b > RANGES[field][1]) {
+				throw new IllegalArgumentException("Invalid H range " + item + ", must be within " + min + "-" + max);
+			}
+			min = a;
+			max = b;
+		}
+
+		long hash = hash(seed, field);
+		if (m.group(3) == null) {
+			return String.valueOf(min + (int) (hash % (max - min + 1)));
+		}
+
+		int step = Integer.parseInt(m.group(3));
+		if (step <= 0) {
+			throw new IllegalArgumentException("Invalid H step " + item);
+		}
+		int start = min + (int) (hash % Math.min(step, max - min + 1));
+		return start + "-" + max + "/" + step;
+	}
+
+	/**
+	 * FNV-1a of the seed and field index: stable across JVMs, unlike identity-based hashes.
+	 */
+	private static long hash(String seed, int field) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < seed.length(); i++) {
+			h ^= seed.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= field;
+		h *= 0x100000001b3L;
+		return h & Long.MAX_VALUE;
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import jenkins.model.Jenkins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link LeaseStore} in a SQL database reachable by every node, created on first use:
+ * <ul>
+ * <li><code>ML_NODES(NODE, HEARTBEAT)</code>: last heartbeat of each node;</li>
+ * <li><code>ML_FIRES(PROJECT, LAUNCHER, FIRE_TIME, NODE)</code>: one row per fire, its primary key making the first
+ * insert win.</li>
+ * </ul>
+ * No driver is bundled: the one accepting the configured URL is looked up on the Jenkins class path, then in the
+ * installed plugins. With H2 for instance, a server database (<code>jdbc:h2:tcp://host/multilauncher</code>) for real
+ * clusters, or an embedded file one shared by the controllers of a single machine
+ * (<code>jdbc:h2:/var/lib/multilauncher/leases;AUTO_SERVER=TRUE</code>) to try the mode locally.
+ */
+public class JdbcLeaseStore implements LeaseStore {
+	private static final Logger LOG = LoggerFactory.getLogger(JdbcLeaseStore.class);
+
+	private final String url;
+	private final String user;
+	private final String password;
+
+	/**
+	 * Guarded by this.
+	 */
+	private Connection connection = null;
+
+	public JdbcLeaseStore(String url, String user, String password) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+	}
+
+	private Connection connection() throws SQLException {
+		if (connection == null || connection.isClosed()) {
+			Properties info = new Properties();
+			if (user != null) {
+				info.setProperty("user", user);
+			}
+			if (password != null) {
+				info.setProperty("password", password);
+			}
+			connection = driver().connect(url, info);
+			connection.setAutoCommit(true);
+			createTables(connection);
+		}
+		return connection;
+	}
+
+	/**
+	 * Driver accepting the URL: one on the Jenkins class path is registered with {@link DriverManager}, but one shipped
+	 * by a plugin is only visible to the plugin class loaders, which DriverManager does not scan.
+	 */
+	private Driver driver() throws SQLException {
+		try {
+			return DriverManager.getDriver(url);
+		} catch (SQLException e) {
+			// Not on the Jenkins class path.
+		}
+		Jenkins jenkins = Jenkins.getInstance();
+		ClassLoader loader = jenkins == null ? JdbcLeaseStore.class.getClassLoader()
+				: jenkins.getPluginManager().uberClassLoader;
+		Iterator<Driver> drivers = ServiceLoader.load(Driver.class, loader).iterator();
+		while (drivers.hasNext()) {
+			try {
+				Driver driver = drivers.next();
+				if (driver.acceptsURL(url)) {
+					return driver;
+				}
+			} catch (ServiceConfigurationError e) {
+				LOG.debug("Cannot load a JDBC driver", e);
+			}
+		}
+		// SQL state 08001: unable to establish the connection.
+		throw new SQLException("No JDBC driver accepts " + url
+				+ ", add one to the Jenkins class path or install a plugin providing it", "08001");
+	}
+
+	private static void createTables(Connection c) throws SQLException {
+		if (!exists(c, "ML_NODES")) {
+			execute(c, "CREATE TABLE ML_NODES (NODE VARCHAR(255) NOT NULL PRIMARY KEY, HEARTBEAT BIGINT NOT NULL)");
+		}
+		if (!exists(c, "ML_FIRES")) {
+			execute(c, "CREATE TABLE ML_FIRES (PROJECT VARCHAR(1024) NOT NULL, LAUNCHER VARCHAR(255) NOT NULL, "
+					+ "FIRE_TIME BIGINT NOT NULL, NODE VARCHAR(255) NOT NULL, "
+					+ "PRIMARY KEY (PROJECT, LAUNCHER, FIRE_TIME))");
+		}
+	}
+
+	private static boolean exists(Connection c, String table) throws SQLException {
+		ResultSet tables = c.getMetaData().getTables(null, null, table, null);
+		try {
+			if (tables.next()) {
+				return true;
+			}
+		} finally {
+			tables.close();
+		}
+		tables = c.getMetaData().getTables(null, null, table.toLowerCase(), null);
+		try {
+			return tables.next();
+		} finally {
+			tables.close();
+		}
+	}
+
+	private static void execute(Connection c, String sql) throws SQLException {
+		Statement s = c.createStatement();
+		try {
+			s.execute(sql);
+		} catch (SQLException e) {
+			// Created by another node in the meantime.
+			LOG.debug("Cannot run " + sql, e);
+		} finally {
+			s.close();
+		}
+	}
+
+	@Override
+	public synchronized void heartbeat(String node, long now) throws IOException {
+		try {
+			PreparedStatement update = connection().prepareStatement("UPDATE ML_NODES SET HEARTBEAT = ? WHERE NODE = ?");
+			try {
+				update.setLong(1, now);
+				update.setString(2, node);
+				if (update.executeUpdate() > 0) {
+					return;
+				}
+			} finally {
+				update.close();
+			}
+			PreparedStatement insert = connection().prepareStatement(
+					"INSERT INTO ML_NODES (NODE, HEARTBEAT) VALUES (?, ?)");
+			try {
+				insert.setString(1, node);
+				insert.setLong(2, now);
+				insert.executeUpdate();
+			} finally {
+				insert.close();
+			}
+		} catch (SQLException e) {
+			throw failure(e);
+		}
+	}
+
+	@Override
+	public synchronized Map<String, Long> liveNodes(long since) throws IOException {
+		try {
+			PreparedStatement select = connection().prepareStatement(
+					"SELECT NODE, HEARTBEAT FROM ML_NODES WHERE HEARTBEAT >= ?");
+			try {
+				select.setLong(1, since);
+				ResultSet rs = select.executeQuery();
+				Map<String, Long> nodes = new HashMap<String, Long>();
+				while (rs.next()) {
+					nodes.put(rs.getString(1), rs.getLong(2));
+				}
+				rs.close();
+				return nodes;
+			} finally {
+				select.close();
+			}
+		} catch (SQLException e) {
+			throw failure(e);
+		}
+	}
+
+	@Override
+	public synchronized boolean claim(LauncherKey key, long scheduledTime, String node) throws IOException {
+		try {
+			PreparedStatement insert = connection().prepareStatement(
+					"INSERT INTO ML_FIRES (PROJECT, LAUNCHER, FIRE_TIME, NODE) VALUES (?, ?, ?, ?)");
+			try {
+				insert.setString(1, key.getProject());
+				insert.setString(2, key.getLauncher());
+				insert.setLong(3, scheduledTime);
+				insert.setString(4, node);
+				insert.executeUpdate();
+				return true;
+			} finally {
+				insert.close();
+			}
+		} catch (SQLException e) {
+			// SQL state class 23: integrity constraint violation, the fire is already taken.
+			if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+				return false;
+			}
+			throw failure(e);
+		}
+	}
+
+	@Override
+	public synchronized void purge(long before) throws IOException {
+		try {
+			PreparedStatement delete = connection().prepareStatement("DELETE FROM ML_FIRES WHERE FIRE_TIME < ?");
+			try {
+				delete.setLong(1, before);
+				delete.executeUpdate();
+			} finally {
+				delete.close();
+			}
+		} catch (SQLException e) {
+			throw failure(e);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (connection != null) {
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				LOG.warn("Cannot close the lease store connection", e);
+			}
+			connection = null;
+		}
+	}
+
+	/**
+	 * Drop the connection, a new one is opened by the next call.
+	 */
+	private IOException failure(SQLException e) {
+		close();
+		return new IOException("Lease store " + url + " failed: " + e.getMessage(), e);
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.util.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optional clustered mode: several controllers hold the same launchers, and each fire runs on exactly one of them.
+ * 
+ * Every node keeps scheduling every launcher. When one fires, the node first checks that the launcher belongs to it
+ * on the consistent hash ring of the live nodes, which spreads the fires; then it takes the lease of this fire in
+ * the shared {@link LeaseStore}, which keeps a fire from running twice while nodes join or leave and two of them
+ * briefly disagree on the ring.
+ * 
+ * A node that missed its last heartbeat may be down: until it leaves the ring, every node tries to take the lease of
+ * its fires, and the first one runs them.
+ * 
+ * While the lease store cannot be reached, a node still runs the fires the ring gives it, but no longer those of late
+ * nodes: a fire may then run twice if two nodes disagree on the ring, or not at all if its owner is down.
+ */
+public final class LauncherCluster {
+	private static final Logger LOG = LoggerFactory.getLogger(LauncherCluster.class);
+
+	/**
+	 * A node without heartbeat for this long leaves the ring.
+	 */
+	static final long NODE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+	static final long HEARTBEAT_PERIOD = TimeUnit.SECONDS.toMillis(10);
+
+	/**
+	 * A node without heartbeat for this long is late: other nodes try to take the leases of its fires.
+	 */
+	static final long LATE_AFTER = HEARTBEAT_PERIOD * 3 / 2;
+
+	/**
+	 * Leases are kept this long, longer than any catch up after a restart could go back.
+	 */
+	static final long LEASE_RETENTION = TimeUnit.DAYS.toMillis(7);
+
+	private static volatile LeaseStore store = null;
+
+	private static volatile String node = null;
+
+	private static volatile HashRing ring = new HashRing(Collections.<String> emptySet());
+
+	/**
+	 * Nodes of the ring that missed their last heartbeat.
+	 */
+	private static volatile Set<String> late = Collections.emptySet();
+
+	private static ScheduledFuture<?> heartbeat = null;
+
+	private static long lastPurge = 0;
+
+	private LauncherCluster() {
+	}
+
+	/**
+	 * @param leaseStore shared store, or null to leave the clustered mode
+	 * @param nodeId name of this node, unique in the cluster
+	 */
+	public static synchronized void configure(LeaseStore leaseStore, String nodeId) {
+		if (heartbeat != null) {
+			heartbeat.cancel(false);
+			heartbeat = null;
+		}
+		if (store != null && store != leaseStore) {
+			store.close();
+		}
+		store = leaseStore;
+		node = nodeId;
+		if (leaseStore == null) {
+			return;
+		}
+		ring = new HashRing(Collections.singleton(nodeId));
+		late = Collections.emptySet();
+		heartbeat = Timer.get().scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				refresh();
+			}
+		}, 0, HEARTBEAT_PERIOD, TimeUnit.MILLISECONDS);
+		LOG.info("Launchers shared with the cluster as node {}", nodeId);
+	}
+
+	public static boolean isEnabled() {
+		return store != null;
+	}
+
+	public static String getNode() {
+		return node;
+	}
+
+	public static Collection<String> getNodes() {
+		return ring.getNodes();
+	}
+
+	/**
+	 * Heartbeat, then rebuild the ring from the live nodes.
+	 */
+	static void refresh() {
+		LeaseStore s = store;
+		String self = node;
+		if (s == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		try {
+			s.heartbeat(self, now);
+			Map<String, Long> heartbeats = s.liveNodes(now - NODE_TIMEOUT);
+			Set<String> live = new HashSet<String>(heartbeats.keySet());
+			// This node fires as long as it is up, even if its heartbeat did not make it.
+			live.add(self);
+			Set<String> behind = new HashSet<String>();
+			for (Map.Entry<String, Long> e : heartbeats.entrySet()) {
+				if (!e.getKey().equals(self) && now - e.getValue() > LATE_AFTER) {
+					behind.add(e.getKey());
+				}
+			}
+			if (!behind.isEmpty() && !behind.equals(late)) {
+				LOG.info("Cluster nodes late on their heartbeat, their fires go to the first taker: {}", behind);
+			}
+			late = behind;
+			if (!live.equals(new HashSet<String>(ring.getNodes()))) {
+				LOG.info("Cluster nodes changed: {}", live);
+				ring = new HashRing(live);
+			}
+			if (now - lastPurge > TimeUnit.HOURS.toMillis(1)) {
+				s.purge(now - LEASE_RETENTION);
+				lastPurge = now;
+			}
+		} catch (IOException e) {
+			LOG.warn("Cannot refresh the cluster nodes, keeping {}: {}", ring.getNodes(), e.getMessage());
+		}
+	}
+
+	/**
+	 * @return true if this node runs the fire: always outside the clustered mode
+	 */
+	public static boolean shouldFire(LauncherKey key, long scheduledTime) {
+		LeaseStore s = store;
+		if (s == null) {
+			return true;
+		}
+		String self = node;
+		String owner = ring.owner(key);
+		if (!self.equals(owner)) {
+			if (!late.contains(owner)) {
+				return false;
+			}
+			// The owner may be down: the first node to take the lease runs the fire.
+			try {
+				return s.claim(key, scheduledTime, self);
+			} catch (IOException e) {
+				LOG.warn("Cannot take the lease of {} from the late node {}, not firing: {}", new Object[] { key, owner,
+						e.getMessage() });
+				return false;
+			}
+		}
+		try {
+			if (s.claim(key, scheduledTime, self)) {
+				return true;
+			}
+			LOG.debug("Fire of {} at {} already taken by another node", key, scheduledTime);
+			return false;
+		} catch (IOException e) {
+			// The ring already gives the fire to this node: better a possible duplicate than a lost fire.
+			LOG.warn("Cannot take the lease of {}, firing anyway: {}", key, e.getMessage());
+			return true;
+		}
+	}
+}
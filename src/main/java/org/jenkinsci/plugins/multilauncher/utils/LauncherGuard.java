@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import hudson.model.Cause;
+import hudson.model.Queue;
+import hudson.model.queue.QueueTaskFuture;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jenkins.model.Jenkins;
+
+import org.jenkinsci.plugins.multilauncher.data.ConcurrencyPolicy;
+import org.jenkinsci.plugins.multilauncher.utils.LauncherTrigger.ParameterTimerTriggerCause;
+
+/**
+ * Remember the last build each launcher put in the queue, to apply its {@link ConcurrencyPolicy} without looking at
+ * the build history.
+ * 
+ * Only launchers with a policy other than {@link ConcurrencyPolicy#ALLOW} are tracked.
+ */
+public final class LauncherGuard {
+	private static final ConcurrentMap<LauncherKey, Tracked> LAST = new ConcurrentHashMap<LauncherKey, Tracked>();
+
+	private LauncherGuard() {
+	}
+
+	/**
+	 * @param key launcher, or build of a matrix launcher
+	 * @param launcher id of the launcher, as listed by the causes of its builds
+	 * @return <code>true</code> if the launcher may put a new build in the queue
+	 */
+	public static boolean admit(LauncherKey key, final String launcher, ConcurrencyPolicy policy) {
+		if (policy == ConcurrencyPolicy.ALLOW) {
+			LAST.remove(key);
+			return true;
+		}
+
+		Tracked last = LAST.get(key);
+		if (last == null) {
+			return true;
+		}
+		if (last.future.isDone()) {
+			LAST.remove(key, last);
+			return true;
+		}
+
+		switch (policy) {
+		case SKIP_IF_ACTIVE:
+			return false;
+		case REPLACE_QUEUED:
+			if (!last.future.getStartCondition().isDone()) {
+				// Still waiting in the queue: the new build takes its place, unless other launchers were merged into
+				// it, whose fires would be lost.
+				final int id = last.id;
+				Queue.withLock(new Runnable() {
+					@Override
+					public void run() {
+						Queue queue = Jenkins.getInstance().getQueue();
+						Queue.Item item = queue.getItem(id);
+						if (item != null && startedOnlyBy(item, launcher)) {
+							queue.cancel(item);
+						}
+					}
+				});
+			}
+			return true;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if every cause of the item is a fire of the launcher
+	 */
+	private static boolean startedOnlyBy(Queue.Item item, String launcher) {
+		for (Cause cause : item.getCauses()) {
+			if (!(cause instanceof ParameterTimerTriggerCause)) {
+				return false;
+			}
+			for (String l : ((ParameterTimerTriggerCause) cause).getLaunchers()) {
+				if (!l.equals(launcher)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return listener recording the build put in the queue, or <code>null</code> if the launcher is not tracked
+	 */
+	public static FireBatcher.Listener listener(final LauncherKey key, ConcurrencyPolicy policy) {
+		if (policy == ConcurrencyPolicy.ALLOW) {
+			return null;
+		}
+		return new FireBatcher.Listener() {
+			@Override
+			public void scheduled(Queue.Item item) {
+				if (item == null) {
+					LAST.remove(key);
+				} else {
+					LAST.put(key, new Tracked(item.getId(), item.getFuture()));
+				}
+			}
+		};
+	}
+
+	public static void forget(String projectFullName) {
+		for (LauncherKey key : LAST.keySet()) {
+			if (key.getProject().equals(projectFullName)) {
+				LAST.remove(key);
+			}
+		}
+	}
+
+	private static final class Tracked {
+		private final int id;
+		private final QueueTaskFuture<?> future;
+
+		private Tracked(int id, QueueTaskFuture<?> future) {
+			this.id = id;
+			this.future = future;
+		}
+	}
+}
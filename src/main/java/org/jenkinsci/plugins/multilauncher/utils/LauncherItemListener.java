@@ -25,39 +25,58 @@ package org.jenkinsci.plugins.multilauncher.utils;
 
 import hudson.Extension;
 import hudson.model.Item;
+import hudson.model.ItemGroup;
 import hudson.model.AbstractProject;
 import hudson.model.Job;
-import jenkins.model.Jenkins;
-
-import org.jenkinsci.plugins.multilauncher.MultiLauncher;
-import org.jenkinsci.plugins.multilauncher.data.Launcher;
 
 @Extension
 public class LauncherItemListener extends hudson.model.listeners.ItemListener {
+	@Override
+	public void onCreated(Item item) {
+		if (item instanceof AbstractProject) {
+			ProjectIndex.put((AbstractProject<?, ?>) item);
+		}
+	}
+
+	@Override
+	public void onCopied(Item src, Item item) {
+		onCreated(item);
+	}
+
 	@Override
 	public void onDeleted(Item item) {
 		if (item instanceof Job) {
+			ProjectIndex.remove(item.getFullName());
+			LoadForecast.forget(item.getFullName());
 			LauncherTrigger.removeTrigger((Job<?, ?>) item);
+		} else if (item instanceof ItemGroup) {
+			for (String fullName : ProjectIndex.removeChildren(item.getFullName())) {
+				LoadForecast.forget(fullName);
+				LauncherTrigger.removeTrigger(fullName);
+			}
 		}
 	}
 
 	@Override
-	public void onRenamed(Item item, String oldName, String newName) {
+	public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+		// Fired for renames and moves, once for the item and once for each of its descendants.
 		if (item instanceof AbstractProject) {
 			AbstractProject<?, ?> job = (AbstractProject<?, ?>) item;
 
-			LauncherTrigger.removeTrigger(oldName);
-			launchScheduler(job);
+			ProjectIndex.remove(oldFullName);
+			ProjectIndex.put(job);
+			LoadForecast.forget(oldFullName);
+			FireJournal.get().rename(oldFullName, newFullName);
+			FireHistory.get().rename(oldFullName, newFullName);
+			LauncherTrigger.removeTrigger(oldFullName);
+			LauncherTrigger.update(job);
 		}
 	}
 
 	@Override
 	public void onLoaded() {
-		for (Item item : Jenkins.getInstance().getAllItems()) {
-			if (item instanceof AbstractProject) {
-				launchScheduler((AbstractProject<?, ?>) item);
-			}
-		}
+		ProjectIndex.clear();
+		LauncherTrigger.registerAllLater();
 	}
 
 	@Override
@@ -65,21 +84,8 @@ public class LauncherItemListener extends hudson.model.listeners.ItemListener {
 		if (item instanceof AbstractProject) {
 			AbstractProject<?, ?> job = (AbstractProject<?, ?>) item;
 
-			LauncherTrigger.removeTrigger(job);
-			launchScheduler(job);
-		}
-	}
-
-	private void launchScheduler(AbstractProject<?, ?> job) {
-		MultiLauncher property = (MultiLauncher) job.getProperty(MultiLauncher.class);
-		if (property == null || property.getLaunchers() == null) {
-			return;
-		}
-		if (job.isDisabled()) {
-			return;
-		}
-		for (Launcher l : property.getLaunchers()) {
-			LauncherTrigger.triggerJob(l, job);
+			ProjectIndex.put(job);
+			LauncherTrigger.update(job);
 		}
 	}
 }
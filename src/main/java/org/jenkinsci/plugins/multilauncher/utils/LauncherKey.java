@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+/**
+ * Identify a launcher across the instance: full name of its project and launcher id.
+ */
+public final class LauncherKey {
+	private final String project;
+	private final String launcher;
+
+	public LauncherKey(String project, String launcher) {
+		this.project = project;
+		this.launcher = launcher;
+	}
+
+	public String getProject() {
+		return project;
+	}
+
+	public String getLauncher() {
+		return launcher;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof LauncherKey)) {
+			return false;
+		}
+		LauncherKey other = (LauncherKey) o;
+		return project.equals(other.project) && launcher.equals(other.launcher);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * project.hashCode() + launcher.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return project + "#" + launcher;
+	}
+}
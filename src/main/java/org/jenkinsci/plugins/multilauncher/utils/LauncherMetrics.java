@@ -0,0 +1,271 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.sf.json.JSONObject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fire path and scheduler health counters, exposed through JMX and the <code>multiLauncher/metrics</code> endpoint.
+ * 
+ * Updates are lock-free: a fire costs a few atomic increments.
+ */
+public final class LauncherMetrics implements LauncherMetricsMBean {
+	private static final Logger LOG = LoggerFactory.getLogger(LauncherMetrics.class);
+
+	public static final String OBJECT_NAME = "org.jenkinsci.plugins.multilauncher:type=LauncherMetrics";
+
+	private static final LauncherMetrics INSTANCE = new LauncherMetrics();
+
+	private final AtomicLong fires = new AtomicLong();
+
+	private final AtomicLong skipped = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private final AtomicLong misfires = new AtomicLong();
+
+	private final AtomicLong deferred = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final AtomicLong collapsed = new AtomicLong();
+
+	/**
+	 * From the time the engine planned the fire to the build being put in the queue.
+	 */
+	private final LatencyHistogram fireDelay = new LatencyHistogram();
+
+	/**
+	 * Time spent on the fire path, before the build waits for its queue batch.
+	 */
+	private final LatencyHistogram executeTime = new LatencyHistogram();
+
+	private final ConcurrentMap<LauncherKey, AtomicLong> firesByLauncher = new ConcurrentHashMap<LauncherKey, AtomicLong>();
+
+	private LauncherMetrics() {
+	}
+
+	public static LauncherMetrics get() {
+		return INSTANCE;
+	}
+
+	@Initializer(after = InitMilestone.PLUGINS_STARTED)
+	public static void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(INSTANCE, name);
+			}
+		} catch (JMException e) {
+			LOG.warn("Cannot register launcher metrics in JMX", e);
+		}
+	}
+
+	public void fired(LauncherKey key, long executeNanos) {
+		fires.incrementAndGet();
+		executeTime.record(executeNanos / 1000);
+		AtomicLong count = firesByLauncher.get(key);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = firesByLauncher.putIfAbsent(key, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	public void queued(long scheduledTime) {
+		fireDelay.record((System.currentTimeMillis() - scheduledTime) * 1000);
+	}
+
+	public void skipped() {
+		skipped.incrementAndGet();
+	}
+
+	public void failed() {
+		failed.incrementAndGet();
+	}
+
+	public void misfired() {
+		misfires.incrementAndGet();
+	}
+
+	public void deferred() {
+		deferred.incrementAndGet();
+	}
+
+	public void dropped() {
+		dropped.incrementAndGet();
+	}
+
+	public void collapsed() {
+		collapsed.incrementAndGet();
+	}
+
+	public void forget(String projectFullName) {
+		for (LauncherKey key : firesByLauncher.keySet()) {
+			if (key.getProject().equals(projectFullName)) {
+				firesByLauncher.remove(key);
+			}
+		}
+	}
+
+	@Override
+	public long getFires() {
+		return fires.get();
+	}
+
+	@Override
+	public long getSkippedFires() {
+		return skipped.get();
+	}
+
+	@Override
+	public long getFailedFires() {
+		return failed.get();
+	}
+
+	@Override
+	public long getMisfires() {
+		return misfires.get();
+	}
+
+	@Override
+	public long getDeferredFires() {
+		return deferred.get();
+	}
+
+	@Override
+	public long getDroppedFires() {
+		return dropped.get();
+	}
+
+	@Override
+	public long getCollapsedFires() {
+		return collapsed.get();
+	}
+
+	@Override
+	public int getWaitingFires() {
+		return AdmissionController.getDeferredCount();
+	}
+
+	@Override
+	public int getRegisteredTriggers() {
+		// Counting the jobs of the quartz engine would hold its job store lock.
+		return LauncherTrigger.getRegisteredTriggers();
+	}
+
+	@Override
+	public int getThreadPoolSize() {
+		return LauncherTrigger.getEngine().getThreadPoolSize();
+	}
+
+	@Override
+	public int getActiveThreads() {
+		return LauncherTrigger.getEngine().getActiveThreads();
+	}
+
+	@Override
+	public long getLastRegistrationMillis() {
+		return LauncherTrigger.getLastRegistrationMillis();
+	}
+
+	@Override
+	public long getFireDelayCount() {
+		return fireDelay.getCount();
+	}
+
+	@Override
+	public double getFireDelayMean() {
+		return fireDelay.getMean();
+	}
+
+	@Override
+	public long getFireDelay95thPercentile() {
+		return fireDelay.getPercentile(0.95);
+	}
+
+	@Override
+	public long getFireDelayMax() {
+		return fireDelay.getMax();
+	}
+
+	@Override
+	public double getExecuteTimeMean() {
+		return executeTime.getMean();
+	}
+
+	@Override
+	public long getExecuteTime95thPercentile() {
+		return executeTime.getPercentile(0.95);
+	}
+
+	@Override
+	public long getExecuteTimeMax() {
+		return executeTime.getMax();
+	}
+
+	/**
+	 * @param withLaunchers include the fire count of each launcher
+	 */
+	public JSONObject toJSON(boolean withLaunchers) {
+		JSONObject json = new JSONObject();
+		json.element("fires", getFires()).element("skippedFires", getSkippedFires())
+				.element("failedFires", getFailedFires()).element("misfires", getMisfires())
+				.element("deferredFires", getDeferredFires()).element("droppedFires", getDroppedFires())
+				.element("waitingFires", getWaitingFires()).element("collapsedFires", getCollapsedFires())
+				.element("registeredTriggers", getRegisteredTriggers())
+				.element("threadPool", new JSONObject().element("size", getThreadPoolSize())
+						.element("active", getActiveThreads()))
+				.element("lastRegistrationMillis", getLastRegistrationMillis())
+				.element("fireDelayMicros", fireDelay.toJSON()).element("executeTimeMicros", executeTime.toJSON());
+		if (withLaunchers) {
+			JSONObject launchers = new JSONObject();
+			for (Map.Entry<LauncherKey, AtomicLong> e : firesByLauncher.entrySet()) {
+				launchers.element(e.getKey().toString(), e.getValue().get());
+			}
+			json.element("launchers", launchers);
+		}
+		return json;
+	}
+}
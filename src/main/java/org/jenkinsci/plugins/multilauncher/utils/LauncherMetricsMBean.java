@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+/**
+ * JMX view of {@link LauncherMetrics}. Durations are in microseconds.
+ */
+public interface LauncherMetricsMBean {
+	long getFires();
+
+	long getSkippedFires();
+
+	long getFailedFires();
+
+	long getMisfires();
+
+	long getDeferredFires();
+
+	long getDroppedFires();
+
+	int getWaitingFires();
+
+	long getCollapsedFires();
+
+	int getRegisteredTriggers();
+
+	int getThreadPoolSize();
+
+	int getActiveThreads();
+
+	long getLastRegistrationMillis();
+
+	long getFireDelayCount();
+
+	double getFireDelayMean();
+
+	long getFireDelay95thPercentile();
+
+	long getFireDelayMax();
+
+	double getExecuteTimeMean();
+
+	long getExecuteTime95thPercentile();
+
+	long getExecuteTimeMax();
+}
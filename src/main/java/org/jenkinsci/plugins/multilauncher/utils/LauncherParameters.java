@@ -0,0 +1,452 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import hudson.model.ParameterDefinition;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersDefinitionProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.jenkinsci.plugins.multilauncher.data.Launcher;
+import org.jenkinsci.plugins.multilauncher.data.LauncherAxis;
+import org.jenkinsci.plugins.multilauncher.data.ParameterBlock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parameter values of a launcher, resolved once against the parameter definitions of its project.
+ * 
+ * Stays valid as long as the project keeps its name and the same {@link ParametersDefinitionProperty} instance: Jenkins
+ * creates a new one each time the job configuration is saved.
+ */
+public final class LauncherParameters {
+	private static final Logger LOG = LoggerFactory.getLogger(LauncherParameters.class);
+
+	private final ParametersDefinitionProperty definitions;
+
+	/**
+	 * Full name of the project the templated values were computed for.
+	 */
+	private final String project;
+
+	private final List<ParameterValue> values;
+
+	/**
+	 * Error message by parameter name, for values the parameter definition refused.
+	 */
+	private final Map<String, String> errors;
+
+	/**
+	 * Axes of a matrix launcher, <code>null</code> for a plain launcher.
+	 */
+	private final Matrix matrix;
+
+	/**
+	 * Values computed at fire time, their place in {@link #values} holding the value computed at compile time.
+	 */
+	private final TemplatedValue[] templated;
+
+	private LauncherParameters(ParametersDefinitionProperty definitions, String project, List<ParameterValue> values,
+			Map<String, String> errors, Matrix matrix, List<TemplatedValue> templated) {
+		this.definitions = definitions;
+		this.project = project;
+		this.values = Collections.unmodifiableList(values);
+		this.errors = Collections.unmodifiableMap(errors);
+		this.matrix = matrix;
+		this.templated = templated.toArray(new TemplatedValue[templated.size()]);
+	}
+
+	/**
+	 * @param project full name of the project, which templated values may refer to
+	 */
+	public static LauncherParameters compile(ParametersDefinitionProperty definitions, String project,
+			Launcher launcher) {
+		List<ParameterValue> values = new ArrayList<ParameterValue>();
+		Map<String, String> errors = new LinkedHashMap<String, String>();
+		List<TemplatedValue> templated = new ArrayList<TemplatedValue>();
+		ParameterBlock parameters = launcher.getParameters();
+		List<LauncherAxis> axes = launcher.getAxes();
+		if (definitions == null || definitions.getParameterDefinitions() == null
+				|| (parameters.isEmpty() && axes.isEmpty())) {
+			Matrix matrix = null;
+			if (!axes.isEmpty()) {
+				for (LauncherAxis axis : axes) {
+					errors.put(axis.getName(), "not a parameter of the project");
+				}
+				matrix = new Matrix(new ArrayList<MatrixAxis>(), null, null);
+			}
+			return new LauncherParameters(definitions, project, values, errors, matrix, templated);
+		}
+
+		List<MatrixAxis> compiledAxes = new ArrayList<MatrixAxis>();
+		for (ParameterDefinition parameterDefinition : definitions.getParameterDefinitions()) {
+			String name = parameterDefinition.getName();
+			LauncherAxis axis = findAxis(axes, name);
+			if (axis != null) {
+				compiledAxes.add(compileAxis(parameterDefinition, axis, values.size(), launcher, errors));
+				continue;
+			}
+			int i = parameters.indexOf(name);
+			if (i < 0) {
+				continue;
+			}
+			try {
+				String text = parameters.getValue(i);
+				ValueTemplate template = null;
+				if (ValueTemplate.isTemplate(text)) {
+					// Evaluated now as well, so that the definition checks what the template produces.
+					template = ValueTemplate.compile(text);
+					text = template.evaluate(System.currentTimeMillis(), project, launcher.getId());
+				}
+				ParameterValue value = parameterDefinition.createValue(null, text);
+				if (template != null) {
+					templated.add(new TemplatedValue(parameterDefinition, values.size(), template));
+				}
+				values.add(value);
+			} catch (Exception e) {
+				errors.put(name, e.getMessage() == null ? e.toString() : e.getMessage());
+				LOG.warn("Invalid value for parameter {} of launcher {}, using the default one: {}", new Object[] {
+						name, launcher.getId(), errors.get(name) });
+				// Same behaviour as a build started by hand without this value.
+				ParameterValue defaultValue = parameterDefinition.getDefaultParameterValue();
+				if (defaultValue != null) {
+					values.add(defaultValue);
+				}
+			}
+		}
+
+		Matrix matrix = null;
+		if (!axes.isEmpty()) {
+			List<String> names = new ArrayList<String>();
+			for (MatrixAxis axis : compiledAxes) {
+				names.add(axis.name);
+			}
+			for (LauncherAxis axis : axes) {
+				if (!names.contains(axis.getName())) {
+					errors.put(axis.getName(), "not a parameter of the project");
+				}
+			}
+			matrix = new Matrix(compiledAxes, parseFilter(launcher.getInclude(), names, "include", errors),
+					parseFilter(launcher.getExclude(), names, "exclude", errors));
+		}
+		return new LauncherParameters(definitions, project, values, errors, matrix, templated);
+	}
+
+	private static LauncherAxis findAxis(List<LauncherAxis> axes, String name) {
+		for (LauncherAxis axis : axes) {
+			if (name.equals(axis.getName())) {
+				return axis;
+			}
+		}
+		return null;
+	}
+
+	private static MatrixAxis compileAxis(ParameterDefinition parameterDefinition, LauncherAxis axis, int position,
+			Launcher launcher, Map<String, String> errors) {
+		List<String> names = new ArrayList<String>(axis.size());
+		List<ParameterValue> values = new ArrayList<ParameterValue>(axis.size());
+		for (int i = 0; i < axis.size(); i++) {
+			try {
+				values.add(parameterDefinition.createValue(null, axis.getValue(i)));
+				names.add(axis.getValue(i));
+			} catch (Exception e) {
+				errors.put(axis.getName(), e.getMessage() == null ? e.toString() : e.getMessage());
+				LOG.warn("Invalid value {} for axis {} of launcher {}, left out: {}", new Object[] { axis.getValue(i),
+						axis.getName(), launcher.getId(), errors.get(axis.getName()) });
+			}
+		}
+		return new MatrixAxis(axis.getName(), position, names.toArray(new String[names.size()]),
+				values.toArray(new ParameterValue[values.size()]));
+	}
+
+	private static CombinationFilter parseFilter(String text, List<String> axes, String field,
+			Map<String, String> errors) {
+		try {
+			return CombinationFilter.parse(text, axes);
+		} catch (IllegalArgumentException e) {
+			errors.put(field, e.getMessage());
+			LOG.warn("Invalid {} filter, ignored: {}", field, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if these values were resolved against the given definitions, for the given project
+	 */
+	public boolean isCompiledFor(ParametersDefinitionProperty property, String project) {
+		return definitions == property && this.project.equals(project);
+	}
+
+	/**
+	 * Values shared by every fire of the launcher: callers must copy the list before modifying it.
+	 */
+	public List<ParameterValue> getValues() {
+		return values;
+	}
+
+	/**
+	 * @return <code>true</code> if some values are computed at fire time
+	 */
+	public boolean isTemplated() {
+		return templated.length > 0;
+	}
+
+	/**
+	 * Values of a fire of the launcher, with the templated ones computed for this fire.
+	 * 
+	 * @param project full name of the project
+	 * @param launcher launcher id
+	 * @param fireTime time the launcher fires for
+	 * @return a new list, which the caller may modify
+	 */
+	public List<ParameterValue> evaluate(String project, String launcher, long fireTime) {
+		List<ParameterValue> list = new ArrayList<ParameterValue>(values);
+		for (TemplatedValue t : templated) {
+			String text = t.template.evaluate(fireTime, project, launcher);
+			try {
+				list.set(t.position, t.definition.createValue(null, text));
+			} catch (Exception e) {
+				LOG.warn("Invalid value {} for parameter {} of launcher {}, using the one computed at save time: {}",
+						new Object[] { text, t.definition.getName(), launcher, e.getMessage() });
+			}
+		}
+		return list;
+	}
+
+	public Map<String, String> getErrors() {
+		return errors;
+	}
+
+	public boolean isMatrix() {
+		return matrix != null;
+	}
+
+	/**
+	 * Combinations of the axes of a matrix launcher passing its filters, each one computed while iterating: a
+	 * launcher with many axes costs nothing until it fires.
+	 */
+	public Iterable<Combination> getCombinations() {
+		return getCombinations(values);
+	}
+
+	/**
+	 * @param values plain values of the fire, from {@link #evaluate(String, String, long)}
+	 */
+	public Iterable<Combination> getCombinations(final List<ParameterValue> values) {
+		if (matrix == null) {
+			return Collections.<Combination> emptyList();
+		}
+		return new Iterable<Combination>() {
+			@Override
+			public Iterator<Combination> iterator() {
+				return new CombinationIterator(values, matrix);
+			}
+		};
+	}
+
+	/**
+	 * @return number of builds a fire of the matrix launcher starts
+	 */
+	public int getCombinationCount() {
+		int count = 0;
+		for (Iterator<Combination> it = getCombinations().iterator(); it.hasNext(); it.next()) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * One build of a matrix launcher.
+	 */
+	public static final class Combination {
+		private final String name;
+
+		private final List<ParameterValue> values;
+
+		private Combination(String name, List<ParameterValue> values) {
+			this.name = name;
+			this.values = values;
+		}
+
+		/**
+		 * @return the axis values, as <code>platform=linux,locale=fr_FR</code>
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return all the parameter values of the build, the caller may modify the list
+		 */
+		public List<ParameterValue> getValues() {
+			return values;
+		}
+	}
+
+	private static final class TemplatedValue {
+		private final ParameterDefinition definition;
+
+		private final int position;
+
+		private final ValueTemplate template;
+
+		private TemplatedValue(ParameterDefinition definition, int position, ValueTemplate template) {
+			this.definition = definition;
+			this.position = position;
+			this.template = template;
+		}
+	}
+
+	private static final class MatrixAxis {
+		private final String name;
+
+		/**
+		 * Index in the plain values where the value of this axis goes.
+		 */
+		private final int position;
+
+		private final String[] names;
+
+		private final ParameterValue[] values;
+
+		private MatrixAxis(String name, int position, String[] names, ParameterValue[] values) {
+			this.name = name;
+			this.position = position;
+			this.names = names;
+			this.values = values;
+		}
+	}
+
+	private static final class Matrix {
+		private final MatrixAxis[] axes;
+
+		private final CombinationFilter include;
+
+		private final CombinationFilter exclude;
+
+		private Matrix(List<MatrixAxis> axes, CombinationFilter include, CombinationFilter exclude) {
+			this.axes = axes.toArray(new MatrixAxis[axes.size()]);
+			this.include = include;
+			this.exclude = exclude;
+		}
+
+		private boolean accepts(String[] combination) {
+			return (include == null || include.matches(combination))
+					&& (exclude == null || !exclude.matches(combination));
+		}
+	}
+
+	/**
+	 * Walk the cross-product of the axes like an odometer, the last axis moving fastest.
+	 */
+	private static final class CombinationIterator implements Iterator<Combination> {
+		private final List<ParameterValue> values;
+
+		private final Matrix matrix;
+
+		private final int[] index;
+
+		private final String[] current;
+
+		private boolean exhausted;
+
+		private Combination next;
+
+		private CombinationIterator(List<ParameterValue> values, Matrix matrix) {
+			this.values = values;
+			this.matrix = matrix;
+			this.index = new int[matrix.axes.length];
+			this.current = new String[matrix.axes.length];
+			boolean empty = matrix.axes.length == 0;
+			for (MatrixAxis axis : matrix.axes) {
+				empty |= axis.values.length == 0;
+			}
+			this.exhausted = empty;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && !exhausted) {
+				for (int a = 0; a < index.length; a++) {
+					current[a] = matrix.axes[a].names[index[a]];
+				}
+				if (matrix.accepts(current)) {
+					next = build();
+				}
+				advance();
+			}
+			return next != null;
+		}
+
+		@Override
+		public Combination next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Combination c = next;
+			next = null;
+			return c;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private Combination build() {
+			List<ParameterValue> list = new ArrayList<ParameterValue>(values.size() + index.length);
+			StringBuilder name = new StringBuilder();
+			int from = 0;
+			for (int a = 0; a < index.length; a++) {
+				MatrixAxis axis = matrix.axes[a];
+				list.addAll(values.subList(from, axis.position));
+				from = axis.position;
+				list.add(axis.values[index[a]]);
+				if (a > 0) {
+					name.append(',');
+				}
+				name.append(axis.name).append('=').append(current[a]);
+			}
+			list.addAll(values.subList(from, values.size()));
+			return new Combination(name.toString(), list);
+		}
+
+		private void advance() {
+			for (int a = index.length - 1; a >= 0; a--) {
+				if (++index[a] < matrix.axes[a].values.length) {
+					return;
+				}
+				index[a] = 0;
+			}
+			exhausted = true;
+		}
+	}
+}
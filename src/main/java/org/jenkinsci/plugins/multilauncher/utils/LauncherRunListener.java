@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import hudson.Extension;
+import hudson.model.Cause;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import org.jenkinsci.plugins.multilauncher.utils.LauncherTrigger.ParameterTimerTriggerCause;
+
+/**
+ * Record in the {@link FireHistory} the builds started by launchers and their results.
+ * 
+ * A build is linked to its fire by the queue id kept in its {@link ParameterTimerTriggerCause}.
+ */
+@Extension
+public class LauncherRunListener extends RunListener<Run<?, ?>> {
+	@Override
+	public void onStarted(Run<?, ?> run, TaskListener listener) {
+		for (Cause c : run.getCauses()) {
+			if (!(c instanceof ParameterTimerTriggerCause)) {
+				continue;
+			}
+			ParameterTimerTriggerCause cause = (ParameterTimerTriggerCause) c;
+			for (String launcher : cause.getLaunchers()) {
+				FireHistory.get().started(new LauncherKey(run.getParent().getFullName(), launcher),
+						cause.getQueueId(), run.getNumber(), run.getTimeInMillis());
+			}
+		}
+	}
+
+	@Override
+	public void onCompleted(Run<?, ?> run, TaskListener listener) {
+		Result result = run.getResult();
+		for (Cause c : run.getCauses()) {
+			if (!(c instanceof ParameterTimerTriggerCause)) {
+				continue;
+			}
+			ParameterTimerTriggerCause cause = (ParameterTimerTriggerCause) c;
+			for (String launcher : cause.getLaunchers()) {
+				FireHistory.get().completed(new LauncherKey(run.getParent().getFullName(), launcher),
+						cause.getQueueId(), run.getNumber(), result == null ? null : result.toString(),
+						run.getTimeInMillis());
+			}
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Engine firing launchers on their cron expression. Each fire goes through
+ * {@link LauncherTrigger#fire(LauncherKey, long)}.
+ * 
+ * Implementations are only called by {@link LauncherTrigger}, which serializes registration changes.
+ */
+public interface LauncherScheduler {
+	/**
+	 * Add triggers, replacing the ones with the same key.
+	 * 
+	 * @param crons valid cron expression by launcher
+	 */
+	void schedule(Map<LauncherKey, String> crons);
+
+	void unschedule(Collection<LauncherKey> keys);
+
+	/**
+	 * @return number of registered triggers
+	 */
+	int size();
+
+	/**
+	 * @return number of threads firing launchers
+	 */
+	int getThreadPoolSize();
+
+	/**
+	 * @return number of threads currently firing a launcher
+	 */
+	int getActiveThreads();
+
+	/**
+	 * @param threads number of threads firing launchers
+	 */
+	void setThreads(int threads);
+
+	/**
+	 * Stop firing. Registered triggers are dropped.
+	 */
+	void shutdown();
+}
@@ -23,41 +23,46 @@
  */
 package org.jenkinsci.plugins.multilauncher.utils;
 
+import hudson.Util;
 import hudson.model.ParameterValue;
 import hudson.model.AbstractProject;
 import hudson.model.Cause;
 import hudson.model.CauseAction;
-import hudson.model.ParameterDefinition;
+import hudson.model.Item;
 import hudson.model.ParametersAction;
-import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Queue;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 
+import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import jenkins.model.Jenkins;
+import jenkins.util.Timer;
 
 import org.acegisecurity.Authentication;
 import org.acegisecurity.GrantedAuthority;
 import org.acegisecurity.context.SecurityContextHolder;
 import org.acegisecurity.runas.RunAsUserToken;
 import org.jenkinsci.plugins.multilauncher.MultiLauncher;
+import org.jenkinsci.plugins.multilauncher.data.ConcurrencyPolicy;
 import org.jenkinsci.plugins.multilauncher.data.Launcher;
-import org.jenkinsci.plugins.multilauncher.data.LauncherParameterValue;
-import org.quartz.CronScheduleBuilder;
-import org.quartz.CronTrigger;
+import org.jenkinsci.plugins.multilauncher.data.MisfirePolicy;
+import org.kohsuke.stapler.export.Exported;
+import org.quartz.CronExpression;
 import org.quartz.Job;
-import org.quartz.JobBuilder;
 import org.quartz.JobDataMap;
-import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
-import org.quartz.JobKey;
-import org.quartz.Scheduler;
-import org.quartz.SchedulerException;
-import org.quartz.SchedulerFactory;
-import org.quartz.TriggerBuilder;
-import org.quartz.impl.StdSchedulerFactory;
-import org.quartz.impl.matchers.GroupMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,69 +70,457 @@ import org.slf4j.LoggerFactory;
 public class LauncherTrigger implements Job {
 	private static final Logger LOG = LoggerFactory.getLogger(LauncherTrigger.class);
 
-	private static Scheduler SCHEDULER = init();
+	/**
+	 * Maximum number of missed fires run by {@link MisfirePolicy#FIRE_ALL} at startup.
+	 */
+	private static final int MAX_CATCH_UP = 100;
+
+	private static volatile long lastRegistrationMillis = -1;
+
+	private static SchedulerEngine engineType = SchedulerEngine.QUARTZ;
+
+	private static int schedulerThreads = QuartzLauncherScheduler.defaultThreads();
+
+	private static volatile LauncherScheduler ENGINE = engineType.create(schedulerThreads);
+
+	/**
+	 * Fires waiting for a thread of the fire executor. Beyond, the scheduler thread runs the fire itself, which slows
+	 * the scheduler down rather than letting the backlog grow.
+	 */
+	static final int FIRE_QUEUE_CAPACITY = 1000;
+
+	/**
+	 * When set, scheduler threads only hand fires off to this executor.
+	 */
+	private static volatile ThreadPoolExecutor FIRE_EXECUTOR = null;
+
+	/**
+	 * Triggers registered in the scheduler, by project full name.
+	 */
+	private static final Map<String, Registration> REGISTERED = new HashMap<String, Registration>();
+
+	/**
+	 * Number of launchers in {@link #REGISTERED}, read without asking the engine.
+	 */
+	private static volatile int registeredTriggers = 0;
+
+	/**
+	 * Apply the global configuration.
+	 * 
+	 * A new engine receives every registered trigger. The fire executor is resized in place.
+	 * 
+	 * @param engine scheduler implementation
+	 * @param threads number of scheduler threads
+	 * @param handOff <code>true</code> if scheduler threads only hand fires off to the fire executor
+	 * @param fireThreads maximum number of threads of the fire executor
+	 */
+	public static synchronized void configure(SchedulerEngine engine, int threads, boolean handOff, int fireThreads) {
+		if (handOff) {
+			int max = Math.max(1, fireThreads);
+			if (FIRE_EXECUTOR == null) {
+				ThreadPoolExecutor executor = new ThreadPoolExecutor(max, max, 60, TimeUnit.SECONDS,
+						new LinkedBlockingQueue<Runnable>(FIRE_QUEUE_CAPACITY), new NamingThreadFactory(
+								new DaemonThreadFactory(), "MultiLauncher fire"), new ThreadPoolExecutor.AbortPolicy());
+				executor.allowCoreThreadTimeOut(true);
+				FIRE_EXECUTOR = executor;
+			} else if (max > FIRE_EXECUTOR.getMaximumPoolSize()) {
+				FIRE_EXECUTOR.setMaximumPoolSize(max);
+				FIRE_EXECUTOR.setCorePoolSize(max);
+			} else {
+				FIRE_EXECUTOR.setCorePoolSize(max);
+				FIRE_EXECUTOR.setMaximumPoolSize(max);
+			}
+		} else if (FIRE_EXECUTOR != null) {
+			// Already handed off fires still run.
+			FIRE_EXECUTOR.shutdown();
+			FIRE_EXECUTOR = null;
+		}
 
-	private static Scheduler init() {
-		try {
-			SchedulerFactory sf = new StdSchedulerFactory();
-			Scheduler sched = sf.getScheduler();
-			sched.start();
-			return sched;
-		} catch (Exception e) {
-			LOG.error("Cannot start scheduler for parameter build scheduler", e);
-			return null;
+		schedulerThreads = Math.max(1, threads);
+		if (engine == null || engine == engineType) {
+			ENGINE.setThreads(schedulerThreads);
+			return;
 		}
+
+		LauncherScheduler old = ENGINE;
+		engineType = engine;
+		ENGINE = engine.create(schedulerThreads);
+		old.shutdown();
+		ENGINE.schedule(registeredCrons());
+	}
+
+	/**
+	 * Replace the engine by the given one, starting from no registered trigger: lets tests drive the fires with their
+	 * own clock. The engine type stays the configured one.
+	 */
+	static synchronized void useEngine(LauncherScheduler engine) {
+		LauncherScheduler old = ENGINE;
+		ENGINE = engine;
+		old.shutdown();
+		REGISTERED.clear();
+		registeredTriggers = 0;
+		FireCalendar.get().clear();
 	}
 
-	public static boolean isInitialized() {
-		return SCHEDULER != null;
+	/**
+	 * Put back an engine of the configured type after {@link #useEngine(LauncherScheduler)}.
+	 */
+	static synchronized void resetEngine() {
+		useEngine(engineType.create(schedulerThreads));
+	}
+
+	private static Map<LauncherKey, String> registeredCrons() {
+		Map<LauncherKey, String> crons = new HashMap<LauncherKey, String>();
+		for (Map.Entry<String, Registration> r : REGISTERED.entrySet()) {
+			for (Map.Entry<String, String> e : r.getValue().crons.entrySet()) {
+				crons.put(new LauncherKey(r.getKey(), e.getKey()), e.getValue());
+			}
+		}
+		return crons;
+	}
+
+	public static LauncherScheduler getEngine() {
+		return ENGINE;
+	}
+
+	/**
+	 * @return number of launchers registered in the engine, without querying it
+	 */
+	public static int getRegisteredTriggers() {
+		return registeredTriggers;
 	}
 
 	public static void removeTrigger(hudson.model.Job<?, ?> project) {
-		removeTrigger(project.getName());
+		removeTrigger(project.getFullName());
 	}
 
-	public static void removeTrigger(String projectName) {
-		try {
-			for (JobKey jk : SCHEDULER.getJobKeys(GroupMatcher.<JobKey> groupEquals(projectName))) {
-				SCHEDULER.deleteJob(jk);
+	/**
+	 * @param projectFullName full name of the project
+	 */
+	public static synchronized void removeTrigger(String projectFullName) {
+		Registration registration = REGISTERED.remove(projectFullName);
+		if (registration == null) {
+			return;
+		}
+		registeredTriggers -= registration.crons.size();
+		FireJournal.get().forget(projectFullName);
+		LauncherGuard.forget(projectFullName);
+		LauncherMetrics.get().forget(projectFullName);
+		AdmissionController.forget(projectFullName);
+		FireDeduplicator.forget(projectFullName);
+		FireHistory.get().forget(projectFullName);
+		List<LauncherKey> keys = new ArrayList<LauncherKey>();
+		for (String id : registration.crons.keySet()) {
+			keys.add(new LauncherKey(projectFullName, id));
+		}
+		ENGINE.unschedule(keys);
+		FireCalendar.get().unschedule(keys);
+	}
+
+	/**
+	 * Bring the triggers of the project in line with its launchers.
+	 * 
+	 * Nothing is done when the launchers did not change since the last call, otherwise only the added, removed or
+	 * modified launchers are touched.
+	 */
+	public static void update(AbstractProject<?, ?> project) {
+		updateAll(Collections.<AbstractProject<?, ?>> singleton(project));
+	}
+
+	/**
+	 * {@link #update(AbstractProject)} several projects, with a single round trip to the scheduler.
+	 * 
+	 * @return number of triggers added to the scheduler
+	 */
+	public static synchronized int updateAll(Iterable<? extends AbstractProject<?, ?>> projects) {
+		Map<LauncherKey, String> added = new HashMap<LauncherKey, String>();
+		List<LauncherKey> removed = new ArrayList<LauncherKey>();
+		for (AbstractProject<?, ?> project : projects) {
+			diff(project, added, removed);
+		}
+
+		ENGINE.unschedule(removed);
+		ENGINE.schedule(added);
+		FireCalendar.get().unschedule(removed);
+		FireCalendar.get().schedule(added);
+		return added.size();
+	}
+
+	/**
+	 * Compute the scheduler changes needed by the project and record the resulting registration.
+	 */
+	private static void diff(AbstractProject<?, ?> project, Map<LauncherKey, String> added, List<LauncherKey> removed) {
+		String fullName = project.getFullName();
+		MultiLauncher property = project.getProperty(MultiLauncher.class);
+		Registration current = REGISTERED.get(fullName);
+		if (property == null || project.isDisabled()) {
+			if (current != null) {
+				REGISTERED.remove(fullName);
+				registeredTriggers -= current.crons.size();
+				for (String id : current.crons.keySet()) {
+					removed.add(new LauncherKey(fullName, id));
+				}
+			}
+			return;
+		}
+
+		Map<String, String> launchers = property.getCrons();
+		if (current != null && current.launchers.equals(launchers)) {
+			return;
+		}
+
+		Map<String, String> wanted = new HashMap<String, String>();
+		for (Launcher l : property.getResolvedLaunchers()) {
+			if (l.getId() == null || l.getCron() == null) {
+				continue;
+			}
+			try {
+				wanted.put(l.getId(), HashedCron.resolve(l.getCron(), HashedCron.seed(fullName, l.getId())));
+			} catch (IllegalArgumentException e) {
+				LOG.error("Invalid cron expression {} for launcher {} of {}: {}", new Object[] { l.getCron(),
+						l.getId(), fullName, e.getMessage() });
+			}
+		}
+		Map<String, String> registered = current == null ? Collections.<String, String> emptyMap() : current.crons;
+
+		for (Map.Entry<String, String> e : registered.entrySet()) {
+			if (!e.getValue().equals(wanted.get(e.getKey()))) {
+				removed.add(new LauncherKey(fullName, e.getKey()));
+			}
+		}
+
+		Map<String, String> scheduled = new HashMap<String, String>();
+		for (Map.Entry<String, String> e : wanted.entrySet()) {
+			String id = e.getKey();
+			String cron = e.getValue();
+			if (cron.equals(registered.get(id))) {
+				scheduled.put(id, cron);
+			} else if (CronExpression.isValidExpression(cron)) {
+				added.put(new LauncherKey(fullName, id), cron);
+				scheduled.put(id, cron);
+			} else {
+				LOG.error("Invalid cron expression {} for launcher {} of {}", new Object[] { cron, id, fullName });
 			}
-		} catch (SchedulerException e) {
-			e.printStackTrace();
 		}
+
+		registeredTriggers += scheduled.size() - registered.size();
+		if (scheduled.isEmpty()) {
+			REGISTERED.remove(fullName);
+		} else {
+			REGISTERED.put(fullName, new Registration(launchers, scheduled));
+		}
+	}
+
+	/**
+	 * Register the launchers of every project in the background, so that Jenkins startup does not wait for it.
+	 */
+	public static void registerAllLater() {
+		Timer.get().submit(new Runnable() {
+			@Override
+			public void run() {
+				long start = System.currentTimeMillis();
+				List<AbstractProject<?, ?>> projects = new ArrayList<AbstractProject<?, ?>>();
+				for (AbstractProject<?, ?> project : Jenkins.getInstance().getAllItems(AbstractProject.class)) {
+					ProjectIndex.put(project);
+					projects.add(project);
+				}
+				int count = updateAll(projects);
+				lastRegistrationMillis = System.currentTimeMillis() - start;
+				LOG.info("Registered {} launchers of {} projects in {} ms", new Object[] { count, projects.size(),
+						lastRegistrationMillis });
+
+				catchUp(projects, start);
+			}
+		});
 	}
 
-	public static void triggerJob(Launcher launcher, hudson.model.Job<?, ?> project) {
-		JobDetail job = JobBuilder.newJob(LauncherTrigger.class)
-				.usingJobData("launcher", launcher.getId())
-				.usingJobData("project", project.getName()).withIdentity(launcher.getId(), project.getName()).build();
+	/**
+	 * Apply the misfire policy of each launcher to the fires it missed between its last journaled fire and now.
+	 */
+	private static void catchUp(List<AbstractProject<?, ?>> projects, long now) {
+		FireJournal journal = FireJournal.get();
+		// Read now rather than by the first fire, which records into it under the queue lock.
+		FireHistory.get();
+		for (AbstractProject<?, ?> project : projects) {
+			MultiLauncher property = project.getProperty(MultiLauncher.class);
+			if (property == null) {
+				continue;
+			}
+			for (Launcher l : property.getResolvedLaunchers()) {
+				MisfirePolicy policy = l.getMisfirePolicy();
+				if (policy == MisfirePolicy.SKIP) {
+					continue;
+				}
+				LauncherKey key = new LauncherKey(project.getFullName(), l.getId());
+				String cron = getRegisteredCron(key);
+				Long last = journal.getLastFire(key);
+				if (cron == null || last == null) {
+					continue;
+				}
+
+				List<Long> missed;
+				if (policy == MisfirePolicy.FIRE_ALL) {
+					missed = missedFires(cron, last, now, MAX_CATCH_UP);
+					if (!missed.isEmpty()) {
+						LOG.info("Launcher {} missed {}{} fire(s), applying policy {}", new Object[] { key,
+								missed.size(), missed.size() == MAX_CATCH_UP ? "+" : "", policy });
+					}
+				} else {
+					missed = lastMissedFire(cron, last, now);
+					if (!missed.isEmpty()) {
+						LOG.info("Launcher {} missed fires since {}, firing the last one of {}", new Object[] { key,
+								new Date(last), new Date(missed.get(0)) });
+					}
+				}
+				for (long time : missed) {
+					fire(key, time);
+				}
+			}
+		}
+	}
 
-		CronTrigger trigger = TriggerBuilder.newTrigger().withIdentity(launcher.getId(), project.getName())
-				.withSchedule(CronScheduleBuilder.cronSchedule(launcher.getCron())).build();
+	private static synchronized String getRegisteredCron(LauncherKey key) {
+		Registration registration = REGISTERED.get(key.getProject());
+		return registration == null ? null : registration.crons.get(key.getLauncher());
+	}
 
+	/**
+	 * @return fire times of the cron expression after <code>from</code> and up to <code>to</code>, at most
+	 *         <code>max</code> of them
+	 */
+	private static List<Long> missedFires(String cron, long from, long to, int max) {
+		List<Long> missed = new ArrayList<Long>();
 		try {
-			SCHEDULER.scheduleJob(job, trigger);
-		} catch (SchedulerException e) {
-			LOG.error("Scheduler error", e);
+			CronExpression expression = new CronExpression(cron);
+			Date next = expression.getNextValidTimeAfter(new Date(from));
+			while (next != null && next.getTime() <= to && missed.size() < max) {
+				missed.add(next.getTime());
+				next = expression.getNextValidTimeAfter(next);
+			}
+		} catch (ParseException e) {
+			LOG.error("Invalid cron expression " + cron, e);
 		}
+		return missed;
+	}
+
+	/**
+	 * @return the latest fire time of the cron expression after <code>from</code> and up to <code>to</code>, if any.
+	 *         Searched in windows growing back from <code>to</code>, rather than going through every fire of a long
+	 *         outage.
+	 */
+	private static List<Long> lastMissedFire(String cron, long from, long to) {
+		try {
+			CronExpression expression = new CronExpression(cron);
+			for (long window = TimeUnit.MINUTES.toMillis(1);; window *= 2) {
+				long start = Math.max(from, to - window);
+				Long last = null;
+				Date next = expression.getNextValidTimeAfter(new Date(start));
+				while (next != null && next.getTime() <= to) {
+					last = next.getTime();
+					next = expression.getNextValidTimeAfter(next);
+				}
+				if (last != null) {
+					return Collections.singletonList(last);
+				}
+				if (start == from) {
+					return Collections.emptyList();
+				}
+			}
+		} catch (ParseException e) {
+			LOG.error("Invalid cron expression " + cron, e);
+			return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * @return duration in milliseconds of the last startup registration, or -1 if it did not run yet
+	 */
+	public static long getLastRegistrationMillis() {
+		return lastRegistrationMillis;
 	}
 
 	@Override
 	public void execute(JobExecutionContext context) throws JobExecutionException {
+		JobDataMap data = context.getMergedJobDataMap();
+		fire(new LauncherKey(data.getString("project"), data.getString("launcher")), context.getScheduledFireTime()
+				.getTime());
+	}
+
+	/**
+	 * Entry point of every scheduler engine: fire the launcher, on the calling thread or on the fire executor, unless
+	 * another cluster node runs this fire.
+	 * 
+	 * @param key launcher to fire
+	 * @param scheduledTime time the engine planned the fire for
+	 */
+	public static void fire(final LauncherKey key, final long scheduledTime) {
+		FireJournal.get().record(key, scheduledTime);
+		if (!LauncherCluster.shouldFire(key, scheduledTime)) {
+			return;
+		}
+		dispatch(key, scheduledTime, false);
+	}
+
+	/**
+	 * Fire again a fire deferred by the {@link AdmissionController}, which already admitted it.
+	 */
+	static void refire(LauncherKey key, long scheduledTime) {
+		dispatch(key, scheduledTime, true);
+	}
+
+	private static void dispatch(final LauncherKey key, final long scheduledTime, final boolean admitted) {
+		ThreadPoolExecutor executor = FIRE_EXECUTOR;
+		if (executor == null) {
+			new LauncherTrigger().fire(key.getProject(), key.getLauncher(), scheduledTime, admitted);
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					new LauncherTrigger().fire(key.getProject(), key.getLauncher(), scheduledTime, admitted);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// Executor full, or replaced by a new configuration in the meantime.
+			new LauncherTrigger().fire(key.getProject(), key.getLauncher(), scheduledTime, admitted);
+		}
+	}
+
+	private void fire(String projectName, String launchName, long scheduledTime, boolean admitted) {
 		SecurityContextHolder.getContext().setAuthentication(
 				new RunAsUserToken("cron", "cron", "cron", new GrantedAuthority[] {}, Authentication.class));
+		try {
+			fireAs(projectName, launchName, scheduledTime, admitted);
+		} catch (RuntimeException e) {
+			LauncherMetrics.get().failed();
+			LOG.error("Cannot fire launcher " + launchName + " of " + projectName, e);
+		} finally {
+			SecurityContextHolder.getContext().setAuthentication(null);
+		}
+	}
 
-		JobDataMap data = context.getMergedJobDataMap();
-		String projectName = data.getString("project");
-		String launchName=data.getString("launcher");
+	/**
+	 * @param admitted <code>true</code> when the admission control already let this fire through
+	 */
+	private void fireAs(String projectName, String launchName, final long scheduledTime, boolean admitted) {
+		long start = System.nanoTime();
+		final LauncherMetrics metrics = LauncherMetrics.get();
 
 		// Get the project name...
 		AbstractProject<?, ?> project = findProject(projectName);
 
 		// If no project name then project has been removed... Removing scheduled task.
 		if (project == null) {
+			metrics.failed();
 			removeTrigger(projectName);
-			LOG.error("Project {} is not found in project list or is not available from 'cron' user", projectName);
+			LOG.error("Project {} is not found in project list", projectName);
+			return;
+		}
+		if (!project.getACL().hasPermission(Jenkins.getAuthentication(), Item.READ)) {
+			// Kept registered: the permission may be granted later.
+			metrics.failed();
+			LOG.error("Project {} is not available from 'cron' user, launcher {} not fired", projectName, launchName);
 			return;
 		}
 
@@ -149,56 +542,100 @@ public class LauncherTrigger implements Job {
 			return;
 		}
 
-		;
-		// From parameter of the build, create value.
-		List<ParameterValue> values = buildParameterValue(project, launcher);
+		LauncherKey key = new LauncherKey(project.getFullName(), launcher.getId());
+		if (!admitted && !AdmissionController.admit(key, launcher.getPriority(), scheduledTime)) {
+			return;
+		}
 
-		Jenkins.getInstance().getQueue()
-				.schedule(project, 0, new ParametersAction(values), new CauseAction(new ParameterTimerTriggerCause()));
+		LauncherParameters parameters = builds.getParameters(project, launcher);
 
-		SecurityContextHolder.getContext().setAuthentication(null);
+		// From parameter of the build, create value.
+		List<ParameterValue> values = buildParameterValue(project, parameters, launcher, scheduledTime);
+
+		if (parameters.isMatrix()) {
+			// One build per combination, each one guarded on its own, all put in the queue together.
+			List<FireBatcher.Fire> fires = new ArrayList<FireBatcher.Fire>();
+			for (LauncherParameters.Combination combination : parameters.getCombinations(values)) {
+				LauncherKey combinationKey = new LauncherKey(key.getProject(), key.getLauncher() + "["
+						+ combination.getName() + "]");
+				FireBatcher.Fire fire = prepare(project, combinationKey, launcher, combination.getValues(),
+						scheduledTime);
+				if (fire != null) {
+					fires.add(fire);
+				}
+			}
+			if (!fires.isEmpty()) {
+				FireBatcher.submitAll(fires);
+				metrics.fired(key, System.nanoTime() - start);
+			}
+			return;
+		}
 
+		FireBatcher.Fire fire = prepare(project, key, launcher, values, scheduledTime);
+		if (fire != null) {
+			FireBatcher.submit(fire);
+			metrics.fired(key, System.nanoTime() - start);
+		}
 	}
 
-	private List<ParameterValue> buildParameterValue(AbstractProject<?, ?> project, Launcher launcher) {
-		List<ParameterValue> values = new ArrayList<ParameterValue>();
-
-		if (launcher.getParameter() == null) {
-			return values;
+	/**
+	 * Apply the deduplication and the concurrency policy to a build of the launcher.
+	 * 
+	 * @return the build to put in the queue, or <code>null</code> if there is none to start
+	 */
+	private FireBatcher.Fire prepare(AbstractProject<?, ?> project, LauncherKey key, Launcher launcher,
+			List<ParameterValue> values, final long scheduledTime) {
+		final LauncherMetrics metrics = LauncherMetrics.get();
+		final FireDeduplicator.Fire fire = FireDeduplicator.join(key.getProject(), values, launcher.getId());
+		if (fire == null) {
+			metrics.collapsed();
+			LOG.debug("Launcher {} collapsed into an identical pending build", key);
+			return null;
 		}
 
-		ParametersDefinitionProperty defaultProp = project.getProperty(ParametersDefinitionProperty.class);
-		List<ParameterDefinition> paramDef = defaultProp.getParameterDefinitions();
-		if (paramDef == null) {
-			return values;
+		ConcurrencyPolicy policy = launcher.getConcurrencyPolicy();
+		if (!LauncherGuard.admit(key, launcher.getId(), policy)) {
+			fire.release();
+			metrics.skipped();
+			LOG.info("Launcher {} skipped: its previous build is still queued or running", key);
+			return null;
 		}
 
-		for (ParameterDefinition parameterDefinition : paramDef) {
-			for (LauncherParameterValue v : launcher.getParameter()) {
-				if (v.getName().equals(parameterDefinition.getName())) {
-
-					try {
-						values.add(parameterDefinition.createValue(null, v.getValue()));
-					} catch (Exception e) {
-						LOG.warn("Parameter invalid... Going to use the default one");
-					}
+		final FireBatcher.Listener guard = LauncherGuard.listener(key, policy);
+		final LauncherKey historyKey = new LauncherKey(key.getProject(), launcher.getId());
+		return new FireBatcher.Fire(project, new FireBatcher.Listener() {
+			@Override
+			public void scheduled(Queue.Item item) {
+				if (item == null) {
+					metrics.failed();
+				} else {
+					metrics.queued(scheduledTime);
+					// The cause may have been folded into an existing item: this is the one the build starts from.
+					fire.getCause().setQueueId(item.getId());
+					FireHistory.get().queued(historyKey, scheduledTime, item.getId());
+				}
+				fire.scheduled(item);
+				if (guard != null) {
+					guard.scheduled(item);
 				}
 			}
-		}
-		return values;
+		}, new ParametersAction(values), new CauseAction(fire.getCause()));
 	}
 
-	private AbstractProject<?, ?> findProject(String projectName) {
-		for (AbstractProject<?, ?> a : Jenkins.getInstance().getAllItems(AbstractProject.class)) {
-			if (projectName.equals(a.getName())) {
-				return a;
-			}
-		}
-		return null;
+	private List<ParameterValue> buildParameterValue(AbstractProject<?, ?> project, LauncherParameters parameters,
+			Launcher launcher, long scheduledTime) {
+		return parameters.evaluate(project.getFullName(), launcher.getId(), scheduledTime);
+	}
+
+	/**
+	 * @return the project, whether or not the current user may see it: the index is filled as SYSTEM
+	 */
+	private AbstractProject<?, ?> findProject(String projectFullName) {
+		return ProjectIndex.get(projectFullName);
 	}
 
 	private Launcher getLauncher(MultiLauncher builds, AbstractProject<?, ?> project, String launcher) {
-		for (Launcher l : builds.getLaunchers()) {
+		for (Launcher l : builds.getResolvedLaunchers()) {
 			if (l.getId().equals(launcher)) {
 				return l;
 			}
@@ -208,20 +645,92 @@ public class LauncherTrigger implements Job {
 	
 	
 	
+	private static final class Registration {
+		/**
+		 * {@link MultiLauncher#getCrons()} of the registered launchers, shared with the property.
+		 */
+		private final Map<String, String> launchers;
+
+		/**
+		 * Cron expression by launcher id.
+		 */
+		private final Map<String, String> crons;
+
+		private Registration(Map<String, String> launchers, Map<String, String> crons) {
+			this.launchers = launchers;
+			this.crons = crons;
+		}
+	}
+
 	public static class ParameterTimerTriggerCause extends Cause {
+		/**
+		 * Launchers this build was started for: more than one when identical fires were collapsed into it.
+		 * <code>null</code> in builds started before launchers were recorded.
+		 */
+		private List<String> launchers;
+
+		/**
+		 * Launcher the cause was created for, never changed afterwards: what {@link #equals(Object)} compares, as
+		 * {@link #launchers} still grows while the cause is in the queue. <code>null</code> in older builds.
+		 */
+		private final String launcher;
+
+		/**
+		 * Id of the queue item the build was started from, to link it to its fire. 0 when not known.
+		 */
+		private long queueId;
+
+		public ParameterTimerTriggerCause() {
+			this.launchers = new ArrayList<String>();
+			this.launcher = null;
+		}
+
+		public ParameterTimerTriggerCause(String launcher) {
+			this.launchers = new ArrayList<String>();
+			this.launchers.add(launcher);
+			this.launcher = launcher;
+		}
+
+		@Exported(visibility = 3)
+		public synchronized List<String> getLaunchers() {
+			return launchers == null ? Collections.<String> emptyList() : new ArrayList<String>(launchers);
+		}
+
+		synchronized void addLauncher(String launcher) {
+			if (!launchers.contains(launcher)) {
+				launchers.add(launcher);
+			}
+		}
+
+		public synchronized long getQueueId() {
+			return queueId;
+		}
+
+		synchronized void setQueueId(long queueId) {
+			this.queueId = queueId;
+		}
+
         @Override
         public String getShortDescription() {
-			return "Parameter build scheduler";
+			List<String> ids = getLaunchers();
+			if (ids.isEmpty()) {
+				return "Parameter build scheduler";
+			}
+			return "Parameter build scheduler: " + Util.join(ids, ", ");
         }
 
         @Override
         public boolean equals(Object o) {
-			return o instanceof ParameterTimerTriggerCause;
+			if (!(o instanceof ParameterTimerTriggerCause)) {
+				return false;
+			}
+			String other = ((ParameterTimerTriggerCause) o).launcher;
+			return launcher == null ? other == null : launcher.equals(other);
         }
 
         @Override
         public int hashCode() {
-			return 4;
+			return launcher == null ? 4 : launcher.hashCode();
         }
     }
 }
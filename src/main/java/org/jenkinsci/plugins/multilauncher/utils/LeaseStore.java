@@ -0,0 +1,56 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Store shared by the controllers of a cluster: node membership and one lease per fire.
+ */
+public interface LeaseStore {
+	/**
+	 * Record that the node is alive.
+	 */
+	void heartbeat(String node, long now) throws IOException;
+
+	/**
+	 * @return last heartbeat of the nodes with a heartbeat more recent than <code>since</code>, by node
+	 */
+	Map<String, Long> liveNodes(long since) throws IOException;
+
+	/**
+	 * Take the lease of a fire.
+	 * 
+	 * @return true if the node got it, false if another node already did
+	 */
+	boolean claim(LauncherKey key, long scheduledTime, String node) throws IOException;
+
+	/**
+	 * Drop the leases of the fires planned before the given time.
+	 */
+	void purge(long before) throws IOException;
+
+	void close();
+}
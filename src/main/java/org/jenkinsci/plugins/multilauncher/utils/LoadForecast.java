@@ -0,0 +1,521 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import hudson.model.AbstractProject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.jenkinsci.plugins.multilauncher.MultiLauncher;
+import org.jenkinsci.plugins.multilauncher.data.Launcher;
+
+/**
+ * Number of builds started by the launchers running at each minute of a coming period, computed by simulating their
+ * crons forward and weighting each fire by the recent average duration of its project.
+ * 
+ * The fire times of an expression are computed once, in a single forward walk, for all the launchers sharing it. Each
+ * fire adds its builds to the minute it starts and removes them from the minute it ends, in a difference array summed
+ * once at the end, so a fire costs the same whatever its duration. The contributors to the peaks are found afterwards
+ * with a binary search in the fire times of each expression.
+ */
+public final class LoadForecast {
+	public static final int MAX_HOURS = 31 * 24;
+
+	public static final int PEAKS = 10;
+
+	public static final int CONTRIBUTORS = 5;
+
+	/**
+	 * Longest build duration taken into account, also how far back the simulation starts to count the builds
+	 * already running at the beginning of the period.
+	 */
+	private static final int MAX_DURATION_MINUTES = 24 * 60;
+
+	/**
+	 * Peaks closer than this are reported once.
+	 */
+	private static final int PEAK_DISTANCE_MINUTES = 60;
+
+	private static final long MINUTE = 60000;
+
+	/**
+	 * Estimated duration by project name, with the time it was estimated.
+	 */
+	private static final ConcurrentMap<String, long[]> DURATIONS = new ConcurrentHashMap<String, long[]>();
+
+	private static final long DURATION_TTL = TimeUnit.MINUTES.toMillis(10);
+
+	private final long from;
+
+	private final int[] concurrency;
+
+	private final int max;
+
+	private final List<Peak> peaks;
+
+	private final int launchers;
+
+	private final long computeMillis;
+
+	private LoadForecast(long from, int[] concurrency, List<Peak> peaks, int launchers, long computeMillis) {
+		this.from = from;
+		this.concurrency = concurrency;
+		int m = 0;
+		for (int c : concurrency) {
+			m = Math.max(m, c);
+		}
+		this.max = m;
+		this.peaks = peaks;
+		this.launchers = launchers;
+		this.computeMillis = computeMillis;
+	}
+
+	/**
+	 * How much a launcher weighs on the executors.
+	 */
+	public interface Weights {
+		/**
+		 * @return estimated build duration of the project in milliseconds, or a negative value if unknown
+		 */
+		long duration(String project);
+
+		/**
+		 * @return number of builds a fire of the launcher starts
+		 */
+		int buildsPerFire(LauncherKey key);
+	}
+
+	/**
+	 * Forecast the launchers of the calendar accepted by the filter, weighted with the project build durations.
+	 * 
+	 * @param defaultDuration duration in milliseconds of the projects without an estimate
+	 */
+	public static LoadForecast compute(long from, int hours, long defaultDuration, FireCalendar.Visitor filter) {
+		evictExpired();
+		return compute(FireCalendar.get().byExpression(filter), from, hours, new ProjectWeights(defaultDuration));
+	}
+
+	/**
+	 * Drop the durations of a deleted, renamed or moved project.
+	 */
+	public static void forget(String projectFullName) {
+		DURATIONS.remove(projectFullName);
+	}
+
+	/**
+	 * Drop the durations which would be estimated again anyway, so that projects no longer forecast leave the cache.
+	 */
+	private static void evictExpired() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, long[]> e : DURATIONS.entrySet()) {
+			if (now - e.getValue()[1] > DURATION_TTL) {
+				DURATIONS.remove(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	static LoadForecast compute(Map<SharedCron, List<LauncherKey>> groups, long from, int hours, Weights weights) {
+		long start = System.nanoTime();
+		from = from - from % MINUTE;
+		int minutes = Math.max(1, Math.min(hours, MAX_HOURS)) * 60;
+
+		// Indexes of the simulation: [0, MAX_DURATION_MINUTES) before the period, then the period itself.
+		long simStart = from - MAX_DURATION_MINUTES * MINUTE;
+		int length = MAX_DURATION_MINUTES + minutes;
+		long simEnd = simStart + length * MINUTE;
+		int[] diff = new int[length + 1];
+
+		List<Group> simulated = new ArrayList<Group>(groups.size());
+		int count = 0;
+		for (Map.Entry<SharedCron, List<LauncherKey>> e : groups.entrySet()) {
+			Group group = new Group(fireMinutes(e.getKey(), simStart, simEnd), e.getValue(), weights);
+			count += e.getValue().size();
+			if (group.fires.length == 0) {
+				continue;
+			}
+			simulated.add(group);
+			for (int f : group.fires) {
+				for (int i = 0; i < group.durations.length; i++) {
+					diff[f] += group.builds[i];
+					diff[Math.min(length, f + group.durations[i])] -= group.builds[i];
+				}
+			}
+		}
+
+		int[] concurrency = new int[minutes];
+		int running = 0;
+		for (int m = 0; m < length; m++) {
+			running += diff[m];
+			if (m >= MAX_DURATION_MINUTES) {
+				concurrency[m - MAX_DURATION_MINUTES] = running;
+			}
+		}
+
+		List<Peak> peaks = new ArrayList<Peak>();
+		for (int m : peakMinutes(concurrency)) {
+			peaks.add(new Peak(from + m * MINUTE, concurrency[m], contributors(simulated,
+					m + MAX_DURATION_MINUTES)));
+		}
+		return new LoadForecast(from, concurrency, peaks, count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- start));
+	}
+
+	/**
+	 * @return the fire times of the expression in <code>[simStart, simEnd)</code>, as minutes from simStart
+	 */
+	private static int[] fireMinutes(SharedCron cron, long simStart, long simEnd) {
+		int[] fires = new int[16];
+		int n = 0;
+		long next = cron.nextAfter(simStart - 1);
+		while (next > 0 && next < simEnd) {
+			int minute = (int) ((next - simStart) / MINUTE);
+			// Crons firing several times in a minute count once per minute.
+			if (n == 0 || fires[n - 1] != minute) {
+				if (n == fires.length) {
+					fires = Arrays.copyOf(fires, n * 2);
+				}
+				fires[n++] = minute;
+			}
+			next = cron.nextAfter(next);
+		}
+		return Arrays.copyOf(fires, n);
+	}
+
+	/**
+	 * @return the highest minutes of the period, at least {@link #PEAK_DISTANCE_MINUTES} apart, highest first
+	 */
+	private static List<Integer> peakMinutes(final int[] concurrency) {
+		Integer[] order = new Integer[concurrency.length];
+		for (int m = 0; m < order.length; m++) {
+			order[m] = m;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return concurrency[b] != concurrency[a] ? concurrency[b] - concurrency[a] : a - b;
+			}
+		});
+		List<Integer> peaks = new ArrayList<Integer>();
+		for (Integer m : order) {
+			if (peaks.size() == PEAKS || concurrency[m] == 0) {
+				break;
+			}
+			boolean distinct = true;
+			for (Integer p : peaks) {
+				distinct &= Math.abs(p - m) >= PEAK_DISTANCE_MINUTES;
+			}
+			if (distinct) {
+				peaks.add(m);
+			}
+		}
+		return peaks;
+	}
+
+	/**
+	 * @return the projects with the most builds running at the minute of the simulation
+	 */
+	private static List<Contributor> contributors(List<Group> groups, int minute) {
+		Map<String, Integer> byProject = new HashMap<String, Integer>();
+		for (Group group : groups) {
+			int upTo = upperBound(group.fires, minute);
+			if (upTo == 0) {
+				continue;
+			}
+			for (int i = 0; i < group.durations.length; i++) {
+				// Fires in (minute - duration, minute] are still running.
+				int fires = upTo - upperBound(group.fires, minute - group.durations[i]);
+				if (fires == 0) {
+					continue;
+				}
+				for (int k = 0; k < group.members[i].length; k++) {
+					LauncherKey key = group.members[i][k];
+					Integer sum = byProject.get(key.getProject());
+					byProject.put(key.getProject(), (sum == null ? 0 : sum) + fires * group.memberBuilds[i][k]);
+				}
+			}
+		}
+
+		List<Contributor> contributors = new ArrayList<Contributor>(byProject.size());
+		for (Map.Entry<String, Integer> e : byProject.entrySet()) {
+			contributors.add(new Contributor(e.getKey(), e.getValue()));
+		}
+		Collections.sort(contributors, new Comparator<Contributor>() {
+			@Override
+			public int compare(Contributor a, Contributor b) {
+				return a.builds != b.builds ? b.builds - a.builds : a.project.compareTo(b.project);
+			}
+		});
+		return contributors.subList(0, Math.min(CONTRIBUTORS, contributors.size()));
+	}
+
+	/**
+	 * @return number of values lower than or equal to the given one
+	 */
+	private static int upperBound(int[] sorted, int value) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] <= value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	public long getFrom() {
+		return from;
+	}
+
+	/**
+	 * @return builds running at each minute of the period
+	 */
+	public int[] getConcurrency() {
+		return concurrency.clone();
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	/**
+	 * @return the highest concurrency of each hour of the period, by day: <code>[day][hour]</code>
+	 */
+	public int[][] getHourly() {
+		int hours = concurrency.length / 60;
+		int[][] days = new int[(hours + 23) / 24][24];
+		for (int m = 0; m < concurrency.length; m++) {
+			int h = m / 60;
+			days[h / 24][h % 24] = Math.max(days[h / 24][h % 24], concurrency[m]);
+		}
+		return days;
+	}
+
+	/**
+	 * @return start of the given day of the period
+	 */
+	public Date getDay(int day) {
+		return new Date(from + TimeUnit.DAYS.toMillis(day));
+	}
+
+	/**
+	 * @return background color of a heatmap cell, from transparent to red at the highest concurrency
+	 */
+	public String getColor(int builds) {
+		return "rgba(204, 0, 0, " + (max == 0 ? "0" : String.format(Locale.ENGLISH, "%.2f", (double) builds / max))
+				+ ")";
+	}
+
+	public List<Peak> getPeaks() {
+		return peaks;
+	}
+
+	public int getLaunchers() {
+		return launchers;
+	}
+
+	public long getComputeMillis() {
+		return computeMillis;
+	}
+
+	public JSONObject toJSON() {
+		JSONArray peaksJson = new JSONArray();
+		for (Peak p : peaks) {
+			JSONArray top = new JSONArray();
+			for (Contributor c : p.contributors) {
+				top.add(new JSONObject().element("project", c.project).element("builds", c.builds));
+			}
+			peaksJson.add(new JSONObject().element("time", p.time).element("builds", p.builds)
+					.element("contributors", top));
+		}
+		return new JSONObject().element("from", from).element("minutes", concurrency.length)
+				.element("launchers", launchers).element("computeMillis", computeMillis)
+				.element("concurrency", concurrency).element("peaks", peaksJson);
+	}
+
+	public static final class Peak {
+		private final long time;
+
+		private final int builds;
+
+		private final List<Contributor> contributors;
+
+		private Peak(long time, int builds, List<Contributor> contributors) {
+			this.time = time;
+			this.builds = builds;
+			this.contributors = contributors;
+		}
+
+		public Date getTime() {
+			return new Date(time);
+		}
+
+		public int getBuilds() {
+			return builds;
+		}
+
+		public List<Contributor> getContributors() {
+			return contributors;
+		}
+	}
+
+	public static final class Contributor {
+		private final String project;
+
+		private final int builds;
+
+		private Contributor(String project, int builds) {
+			this.project = project;
+			this.builds = builds;
+		}
+
+		public String getProject() {
+			return project;
+		}
+
+		public int getBuilds() {
+			return builds;
+		}
+	}
+
+	/**
+	 * Launchers of one expression, by build duration: the fires of the expression are applied once per duration.
+	 */
+	private static final class Group {
+		private final int[] fires;
+
+		/**
+		 * Distinct durations in minutes.
+		 */
+		private final int[] durations;
+
+		/**
+		 * Builds per fire of all the launchers of each duration.
+		 */
+		private final int[] builds;
+
+		private final LauncherKey[][] members;
+
+		private final int[][] memberBuilds;
+
+		private Group(int[] fires, List<LauncherKey> keys, Weights weights) {
+			this.fires = fires;
+			Map<Integer, List<LauncherKey>> byDuration = new HashMap<Integer, List<LauncherKey>>();
+			Map<String, Integer> projectMinutes = new HashMap<String, Integer>();
+			for (LauncherKey key : keys) {
+				Integer minutes = projectMinutes.get(key.getProject());
+				if (minutes == null) {
+					long duration = weights.duration(key.getProject());
+					minutes = (int) Math.min(MAX_DURATION_MINUTES, Math.max(1, (duration + MINUTE - 1) / MINUTE));
+					projectMinutes.put(key.getProject(), minutes);
+				}
+				List<LauncherKey> list = byDuration.get(minutes);
+				if (list == null) {
+					list = new ArrayList<LauncherKey>();
+					byDuration.put(minutes, list);
+				}
+				list.add(key);
+			}
+
+			int n = byDuration.size();
+			durations = new int[n];
+			builds = new int[n];
+			members = new LauncherKey[n][];
+			memberBuilds = new int[n][];
+			int i = 0;
+			for (Map.Entry<Integer, List<LauncherKey>> e : byDuration.entrySet()) {
+				durations[i] = e.getKey();
+				members[i] = e.getValue().toArray(new LauncherKey[e.getValue().size()]);
+				memberBuilds[i] = new int[members[i].length];
+				for (int k = 0; k < members[i].length; k++) {
+					memberBuilds[i][k] = weights.buildsPerFire(members[i][k]);
+					builds[i] += memberBuilds[i][k];
+				}
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Durations estimated by Jenkins from the last builds, cached for a few minutes as they may load builds, and
+	 * the combination count of matrix launchers.
+	 */
+	private static final class ProjectWeights implements Weights {
+		private final long defaultDuration;
+
+		private final Map<String, Map<String, Integer>> matrixBuilds = new HashMap<String, Map<String, Integer>>();
+
+		private ProjectWeights(long defaultDuration) {
+			this.defaultDuration = defaultDuration;
+		}
+
+		@Override
+		public long duration(String project) {
+			long now = System.currentTimeMillis();
+			long[] cached = DURATIONS.get(project);
+			if (cached == null || now - cached[1] > DURATION_TTL) {
+				AbstractProject<?, ?> p = ProjectIndex.get(project);
+				cached = new long[] { p == null ? -1 : p.getEstimatedDuration(), now };
+				DURATIONS.put(project, cached);
+			}
+			return cached[0] > 0 ? cached[0] : defaultDuration;
+		}
+
+		@Override
+		public int buildsPerFire(LauncherKey key) {
+			Map<String, Integer> matrix = matrixBuilds.get(key.getProject());
+			if (matrix == null) {
+				matrix = new HashMap<String, Integer>();
+				AbstractProject<?, ?> p = ProjectIndex.get(key.getProject());
+				MultiLauncher property = p == null ? null : p.getProperty(MultiLauncher.class);
+				if (property != null) {
+					for (Launcher l : property.getResolvedLaunchers()) {
+						if (l.isMatrix()) {
+							matrix.put(l.getId(), property.getParameters(p, l).getCombinationCount());
+						}
+					}
+				}
+				matrixBuilds.put(key.getProject(), matrix);
+			}
+			Integer builds = matrix.get(key.getLauncher());
+			return builds == null ? 1 : builds;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import hudson.model.AbstractProject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Projects known by the launcher, keyed by full name.
+ * 
+ * Kept up to date by {@link LauncherItemListener} so that a trigger can find its project without walking every item of
+ * the instance.
+ */
+public final class ProjectIndex {
+	private static final ConcurrentMap<String, AbstractProject<?, ?>> PROJECTS = new ConcurrentHashMap<String, AbstractProject<?, ?>>();
+
+	private ProjectIndex() {
+	}
+
+	public static void put(AbstractProject<?, ?> project) {
+		PROJECTS.put(project.getFullName(), project);
+	}
+
+	public static void remove(String fullName) {
+		PROJECTS.remove(fullName);
+	}
+
+	/**
+	 * Remove every project living under the given item group (folder deleted or moved).
+	 * 
+	 * @return full names of the removed projects
+	 */
+	public static List<String> removeChildren(String parentFullName) {
+		String prefix = parentFullName + "/";
+		List<String> removed = new ArrayList<String>();
+		for (String fullName : PROJECTS.keySet()) {
+			if (fullName.startsWith(prefix) && PROJECTS.remove(fullName) != null) {
+				removed.add(fullName);
+			}
+		}
+		return removed;
+	}
+
+	public static AbstractProject<?, ?> get(String fullName) {
+		AbstractProject<?, ?> project = PROJECTS.get(fullName);
+		if (project != null) {
+			return project;
+		}
+
+		// Not indexed yet (listener event missed): ask Jenkins once and remember the answer.
+		Jenkins jenkins = Jenkins.getInstance();
+		if (jenkins == null) {
+			return null;
+		}
+		project = jenkins.getItemByFullName(fullName, AbstractProject.class);
+		if (project != null) {
+			put(project);
+		}
+		return project;
+	}
+
+	public static void clear() {
+		PROJECTS.clear();
+	}
+
+	public static int size() {
+		return PROJECTS.size();
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.SchedulerFactory;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.listeners.TriggerListenerSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Quartz RAMJobStore engine: one job and one cron trigger per launcher, grouped by project full name. Jobs run
+ * {@link LauncherTrigger#execute(org.quartz.JobExecutionContext)}.
+ */
+public class QuartzLauncherScheduler implements LauncherScheduler {
+	private static final Logger LOG = LoggerFactory.getLogger(QuartzLauncherScheduler.class);
+
+	private static final String THREAD_COUNT = "org.quartz.threadPool.threadCount";
+
+	private int threads;
+
+	/**
+	 * Started on first use, when the first launcher is registered.
+	 */
+	private volatile Scheduler scheduler = null;
+
+	public QuartzLauncherScheduler(int threads) {
+		this.threads = threads;
+	}
+
+	private static Properties quartzProperties() {
+		Properties props = new Properties();
+		InputStream in = QuartzLauncherScheduler.class.getResourceAsStream("/quartz.properties");
+		if (in != null) {
+			try {
+				props.load(in);
+			} catch (IOException e) {
+				LOG.warn("Cannot read quartz.properties, using quartz defaults", e);
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+		return props;
+	}
+
+	/**
+	 * @return thread count of quartz.properties
+	 */
+	public static int defaultThreads() {
+		try {
+			return Integer.parseInt(quartzProperties().getProperty(THREAD_COUNT, "1").trim());
+		} catch (NumberFormatException e) {
+			return 1;
+		}
+	}
+
+	private Scheduler init() {
+		try {
+			Properties props = quartzProperties();
+			props.setProperty(THREAD_COUNT, String.valueOf(threads));
+			SchedulerFactory sf = new StdSchedulerFactory(props);
+			Scheduler sched = sf.getScheduler();
+			sched.getListenerManager().addTriggerListener(new TriggerListenerSupport() {
+				@Override
+				public String getName() {
+					return "MultiLauncher metrics";
+				}
+
+				@Override
+				public void triggerMisfired(Trigger trigger) {
+					LauncherMetrics.get().misfired();
+				}
+			});
+			sched.start();
+			return sched;
+		} catch (Exception e) {
+			LOG.error("Cannot start scheduler for parameter build scheduler", e);
+			return null;
+		}
+	}
+
+	private synchronized Scheduler scheduler() throws SchedulerException {
+		if (scheduler == null) {
+			scheduler = init();
+			if (scheduler == null) {
+				throw new SchedulerException("Parameter build scheduler is not available");
+			}
+		}
+		return scheduler;
+	}
+
+	/**
+	 * @return the quartz scheduler, or <code>null</code> if not started yet
+	 */
+	public Scheduler getScheduler() {
+		return scheduler;
+	}
+
+	@Override
+	public void schedule(Map<LauncherKey, String> crons) {
+		if (crons.isEmpty()) {
+			return;
+		}
+		Map<JobDetail, Set<? extends Trigger>> jobs = new HashMap<JobDetail, Set<? extends Trigger>>();
+		for (Map.Entry<LauncherKey, String> e : crons.entrySet()) {
+			LauncherKey key = e.getKey();
+			JobDetail job = JobBuilder.newJob(LauncherTrigger.class).usingJobData("launcher", key.getLauncher())
+					.usingJobData("project", key.getProject()).withIdentity(key.getLauncher(), key.getProject())
+					.build();
+			Trigger trigger = TriggerBuilder.newTrigger().withIdentity(key.getLauncher(), key.getProject())
+					.withSchedule(CronScheduleBuilder.cronSchedule(e.getValue())).build();
+			jobs.put(job, Collections.singleton(trigger));
+		}
+		try {
+			scheduler().scheduleJobs(jobs, true);
+		} catch (SchedulerException e) {
+			LOG.error("Cannot register parameter build triggers", e);
+		}
+	}
+
+	@Override
+	public void unschedule(Collection<LauncherKey> keys) {
+		if (keys.isEmpty() || scheduler == null) {
+			return;
+		}
+		List<JobKey> jobKeys = new ArrayList<JobKey>(keys.size());
+		for (LauncherKey key : keys) {
+			jobKeys.add(new JobKey(key.getLauncher(), key.getProject()));
+		}
+		try {
+			scheduler.deleteJobs(jobKeys);
+		} catch (SchedulerException e) {
+			LOG.error("Cannot remove parameter build triggers", e);
+		}
+	}
+
+	/**
+	 * Builds the set of every job key under the job store lock: not for frequent polling, see
+	 * {@link LauncherTrigger#getRegisteredTriggers()}.
+	 */
+	@Override
+	public int size() {
+		Scheduler sched = scheduler;
+		if (sched == null) {
+			return 0;
+		}
+		try {
+			return sched.getJobKeys(GroupMatcher.anyJobGroup()).size();
+		} catch (SchedulerException e) {
+			return 0;
+		}
+	}
+
+	@Override
+	public int getThreadPoolSize() {
+		Scheduler sched = scheduler;
+		if (sched == null) {
+			return threads;
+		}
+		try {
+			return sched.getMetaData().getThreadPoolSize();
+		} catch (SchedulerException e) {
+			return threads;
+		}
+	}
+
+	@Override
+	public int getActiveThreads() {
+		Scheduler sched = scheduler;
+		if (sched == null) {
+			return 0;
+		}
+		try {
+			return sched.getCurrentlyExecutingJobs().size();
+		} catch (SchedulerException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Quartz cannot resize its thread pool: a running scheduler is restarted and its triggers moved to the new one.
+	 */
+	@Override
+	public synchronized void setThreads(int threads) {
+		if (threads == this.threads) {
+			return;
+		}
+		this.threads = threads;
+		if (scheduler != null) {
+			restart();
+		}
+	}
+
+	private void restart() {
+		Map<JobDetail, Set<? extends Trigger>> registered = new HashMap<JobDetail, Set<? extends Trigger>>();
+		Scheduler old = scheduler;
+		try {
+			old.standby();
+			for (JobKey jk : old.getJobKeys(GroupMatcher.anyJobGroup())) {
+				registered.put(old.getJobDetail(jk), new HashSet<Trigger>(old.getTriggersOfJob(jk)));
+			}
+			old.shutdown();
+		} catch (SchedulerException e) {
+			LOG.error("Cannot stop parameter build scheduler", e);
+		}
+
+		scheduler = init();
+		if (scheduler != null && !registered.isEmpty()) {
+			try {
+				scheduler.scheduleJobs(registered, true);
+			} catch (SchedulerException e) {
+				LOG.error("Cannot move triggers to the new parameter build scheduler", e);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		if (scheduler != null) {
+			try {
+				scheduler.shutdown();
+			} catch (SchedulerException e) {
+				LOG.error("Cannot stop parameter build scheduler", e);
+			}
+			scheduler = null;
+		}
+	}
+}
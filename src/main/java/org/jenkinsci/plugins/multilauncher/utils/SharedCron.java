@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.quartz.CronExpression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parsed cron expression shared by all the launchers using the same expression.
+ */
+final class SharedCron {
+	private static final Logger LOG = LoggerFactory.getLogger(SharedCron.class);
+
+	private final String expression;
+	private final CronExpression cron;
+	private int references = 0;
+
+	private SharedCron(String expression, CronExpression cron) {
+		this.expression = expression;
+		this.cron = cron;
+	}
+
+	/**
+	 * @return next fire time strictly after the given time, or 0 if there is none
+	 */
+	long nextAfter(long time) {
+		Date next = cron.getNextValidTimeAfter(new Date(time));
+		return next == null ? 0 : next.getTime();
+	}
+
+	/**
+	 * Reference counted expressions. Not thread safe: guarded by its owner.
+	 */
+	static final class Pool {
+		private final Map<String, SharedCron> expressions = new HashMap<String, SharedCron>();
+
+		/**
+		 * @return the shared expression, or null if it cannot be parsed
+		 */
+		SharedCron acquire(String expression) {
+			SharedCron cron = expressions.get(expression);
+			if (cron == null) {
+				try {
+					cron = new SharedCron(expression, new CronExpression(expression));
+				} catch (ParseException e) {
+					LOG.error("Invalid cron expression " + expression, e);
+					return null;
+				}
+				expressions.put(expression, cron);
+			}
+			cron.references++;
+			return cron;
+		}
+
+		void release(SharedCron cron) {
+			if (--cron.references == 0) {
+				expressions.remove(cron.expression);
+			}
+		}
+
+		void clear() {
+			expressions.clear();
+		}
+	}
+}
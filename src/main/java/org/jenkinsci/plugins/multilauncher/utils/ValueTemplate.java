@@ -0,0 +1,266 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.apache.commons.lang.time.FastDateFormat;
+
+/**
+ * Launcher parameter value computed when the launcher fires, from text holding <code>${...}</code> expressions:
+ * <ul>
+ * <li><code>${date}</code>: fire time, formatted as <code>yyyy-MM-dd</code> or with the pattern given after a colon,
+ * as <code>${date:yyyyMMdd-HHmm}</code></li>
+ * <li><code>${week}</code>: ISO week of the fire time, as <code>2015-W02</code></li>
+ * <li><code>${epoch}</code>: fire time in milliseconds</li>
+ * <li><code>${project}</code> and <code>${launcher}</code>: full name of the project and launcher id</li>
+ * </ul>
+ * Time variables take an offset in minutes, hours, days or weeks, as <code>${date-1d}</code> or
+ * <code>${date+2h:HH:mm}</code>. <code>$${</code> stands for a literal <code>${</code>.
+ * 
+ * Templates are parsed once: evaluating one only appends its parts to a buffer.
+ */
+public final class ValueTemplate {
+	private static final String DEFAULT_DATE_FORMAT = "yyyy-MM-dd";
+
+	private enum Variable {
+		DATE, WEEK, EPOCH, PROJECT, LAUNCHER
+	}
+
+	/**
+	 * Text between the expressions: <code>literals[i]</code> comes before <code>expressions[i]</code>, the last one
+	 * after the last expression.
+	 */
+	private final String[] literals;
+
+	private final Expression[] expressions;
+
+	private ValueTemplate(String[] literals, Expression[] expressions) {
+		this.literals = literals;
+		this.expressions = expressions;
+	}
+
+	/**
+	 * @return <code>true</code> if the text has expressions to compile
+	 */
+	public static boolean isTemplate(String text) {
+		return text != null && text.contains("${");
+	}
+
+	/**
+	 * @throws IllegalArgumentException if an expression is not terminated, names an unknown variable or has an invalid
+	 *             offset or format
+	 */
+	public static ValueTemplate compile(String text) {
+		List<String> literals = new ArrayList<String>();
+		List<Expression> expressions = new ArrayList<Expression>();
+		StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while (i < text.length()) {
+			if (text.startsWith("$${", i)) {
+				literal.append("${");
+				i += 3;
+			} else if (text.startsWith("${", i)) {
+				int end = text.indexOf('}', i);
+				if (end < 0) {
+					throw new IllegalArgumentException("Missing } after " + text.substring(i));
+				}
+				literals.add(literal.toString());
+				literal.setLength(0);
+				expressions.add(Expression.parse(text.substring(i + 2, end)));
+				i = end + 1;
+			} else {
+				literal.append(text.charAt(i++));
+			}
+		}
+		literals.add(literal.toString());
+		return new ValueTemplate(literals.toArray(new String[literals.size()]),
+				expressions.toArray(new Expression[expressions.size()]));
+	}
+
+	/**
+	 * @param fireTime time the launcher fires for, in milliseconds
+	 * @param project full name of the project
+	 * @param launcher launcher id
+	 */
+	public String evaluate(long fireTime, String project, String launcher) {
+		StringBuilder value = new StringBuilder(literals[0]);
+		for (int i = 0; i < expressions.length; i++) {
+			expressions[i].appendTo(value, fireTime, project, launcher);
+			value.append(literals[i + 1]);
+		}
+		return value.toString();
+	}
+
+	private static final class Expression {
+		private final Variable variable;
+
+		/**
+		 * Offset added to the fire time, in units of {@link #field}.
+		 */
+		private final int offset;
+
+		/**
+		 * {@link Calendar} field of the offset.
+		 */
+		private final int field;
+
+		private final FastDateFormat format;
+
+		private Expression(Variable variable, int offset, int field, FastDateFormat format) {
+			this.variable = variable;
+			this.offset = offset;
+			this.field = field;
+			this.format = format;
+		}
+
+		/**
+		 * @param text expression without <code>${</code> and <code>}</code>: name, optional offset, optional format
+		 */
+		private static Expression parse(String text) {
+			String spec = text;
+			String pattern = null;
+			int colon = text.indexOf(':');
+			if (colon >= 0) {
+				spec = text.substring(0, colon);
+				pattern = text.substring(colon + 1);
+			}
+			int sign = Math.max(spec.indexOf('+'), spec.indexOf('-'));
+			String name = (sign < 0 ? spec : spec.substring(0, sign)).trim();
+
+			Variable variable;
+			try {
+				variable = Variable.valueOf(name.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown variable " + name + " in ${" + text + "}");
+			}
+			boolean time = variable == Variable.DATE || variable == Variable.WEEK || variable == Variable.EPOCH;
+
+			int offset = 0;
+			int field = Calendar.MINUTE;
+			if (sign >= 0) {
+				if (!time) {
+					throw new IllegalArgumentException("No offset allowed on " + name + " in ${" + text + "}");
+				}
+				String amount = spec.substring(sign + 1).trim();
+				if (amount.length() < 2) {
+					throw new IllegalArgumentException("Invalid offset in ${" + text + "}");
+				}
+				field = unit(amount.charAt(amount.length() - 1), text);
+				try {
+					offset = Integer.parseInt(amount.substring(0, amount.length() - 1));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Invalid offset in ${" + text + "}");
+				}
+				if (spec.charAt(sign) == '-') {
+					offset = -offset;
+				}
+			}
+
+			FastDateFormat format = null;
+			if (variable == Variable.DATE) {
+				try {
+					format = FastDateFormat.getInstance(pattern == null ? DEFAULT_DATE_FORMAT : pattern);
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("Invalid date format " + pattern + " in ${" + text + "}");
+				}
+			} else if (pattern != null) {
+				throw new IllegalArgumentException("No format allowed on " + name + " in ${" + text + "}");
+			}
+			return new Expression(variable, offset, field, format);
+		}
+
+		private static int unit(char unit, String text) {
+			switch (unit) {
+			case 'm':
+				return Calendar.MINUTE;
+			case 'h':
+				return Calendar.HOUR_OF_DAY;
+			case 'd':
+				return Calendar.DAY_OF_MONTH;
+			case 'w':
+				return Calendar.WEEK_OF_YEAR;
+			default:
+				throw new IllegalArgumentException("Unknown offset unit " + unit + " in ${" + text
+						+ "}, expected m, h, d or w");
+			}
+		}
+
+		private void appendTo(StringBuilder value, long fireTime, String project, String launcher) {
+			switch (variable) {
+			case PROJECT:
+				value.append(project);
+				return;
+			case LAUNCHER:
+				value.append(launcher);
+				return;
+			default:
+				break;
+			}
+
+			long time = fireTime;
+			Calendar calendar = null;
+			if (offset != 0 || variable == Variable.WEEK) {
+				// Days and weeks follow the calendar across daylight saving changes.
+				calendar = Calendar.getInstance();
+				if (variable == Variable.WEEK) {
+					calendar.setFirstDayOfWeek(Calendar.MONDAY);
+					calendar.setMinimalDaysInFirstWeek(4);
+				}
+				calendar.setTimeInMillis(fireTime);
+				calendar.add(field, offset);
+				time = calendar.getTimeInMillis();
+			}
+			switch (variable) {
+			case DATE:
+				value.append(format.format(time));
+				break;
+			case EPOCH:
+				value.append(time);
+				break;
+			default:
+				appendIsoWeek(value, calendar);
+				break;
+			}
+		}
+
+		private static void appendIsoWeek(StringBuilder value, Calendar calendar) {
+			int week = calendar.get(Calendar.WEEK_OF_YEAR);
+			int year = calendar.get(Calendar.YEAR);
+			// Early January may be in the last week of the previous year, late December in the first week of the next.
+			if (week >= 52 && calendar.get(Calendar.MONTH) == Calendar.JANUARY) {
+				year--;
+			} else if (week == 1 && calendar.get(Calendar.MONTH) == Calendar.DECEMBER) {
+				year++;
+			}
+			value.append(year).append("-W");
+			if (week < 10) {
+				value.append('0');
+			}
+			value.append(week);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.StringParameterDefinition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.jenkinsci.plugins.multilauncher.data.ConcurrencyPolicy;
+import org.jenkinsci.plugins.multilauncher.data.Launcher;
+import org.jenkinsci.plugins.multilauncher.data.LauncherAxis;
+import org.jenkinsci.plugins.multilauncher.data.LauncherParameterValue;
+import org.jenkinsci.plugins.multilauncher.data.LauncherPriority;
+import org.jenkinsci.plugins.multilauncher.data.MisfirePolicy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class LauncherBulkUpdateTest {
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	@Test
+	public void bulkUpdateKeepsInheritingFromTheTemplate() throws Exception {
+		MultiLauncherDescriptor descriptor = j.jenkins.getDescriptorByType(MultiLauncherDescriptor.class);
+		descriptor.setLaunchers(Collections.singletonList(template(MisfirePolicy.FIRE_ONCE, LauncherPriority.HIGH)));
+
+		FreeStyleProject project = j.createFreeStyleProject("inheriting");
+		List<ParameterDefinition> definitions = new ArrayList<ParameterDefinition>();
+		definitions.add(new StringParameterDefinition("BRANCH", "", ""));
+		definitions.add(new StringParameterDefinition("TARGET", "", ""));
+		definitions.add(new StringParameterDefinition("PLATFORM", "", ""));
+		project.addProperty(new ParametersDefinitionProperty(definitions));
+		Launcher launcher = new Launcher(null, "nightly", new ArrayList<LauncherParameterValue>(), null, null, null,
+				null, null, null, "nightly");
+		project.addProperty(new MultiLauncher(Collections.singletonList(launcher)));
+
+		JSONObject result = LauncherBulkUpdate.apply(new JSONObject().element("projects", new JSONArray()
+				.element(new JSONObject().element("project", project.getFullName()).element("parameters",
+						new JSONObject().element("TARGET", "prod")))));
+		assertEquals(result.toString(), 1, result.getInt("updated"));
+
+		Launcher stored = project.getProperty(MultiLauncher.class).getLaunchers().get(0);
+		assertEquals("nightly", stored.getTemplate());
+		assertNull(stored.getCron());
+		assertEquals(Collections.emptyList(), stored.getAxes());
+		assertNull(stored.getExclude());
+		assertEquals(1, stored.getParameters().size());
+		assertEquals("prod", stored.getParameters().get("TARGET"));
+
+		// The template still decides what the launcher does not override, including once it changes.
+		descriptor.setLaunchers(Collections.singletonList(template(MisfirePolicy.FIRE_ALL, LauncherPriority.LOW)));
+		Launcher resolved = descriptor.resolve(stored);
+		assertEquals("0 0 3 * * ?", resolved.getCron());
+		assertEquals(MisfirePolicy.FIRE_ALL, resolved.getMisfirePolicy());
+		assertEquals(ConcurrencyPolicy.SKIP_IF_ACTIVE, resolved.getConcurrencyPolicy());
+		assertEquals(LauncherPriority.LOW, resolved.getPriority());
+		assertEquals(1, resolved.getAxes().size());
+		assertEquals("PLATFORM=windows", resolved.getExclude());
+		assertEquals("master", resolved.getParameters().get("BRANCH"));
+		assertEquals("prod", resolved.getParameters().get("TARGET"));
+	}
+
+	private static Launcher template(MisfirePolicy misfirePolicy, LauncherPriority priority) {
+		return new Launcher("0 0 3 * * ?", "nightly", Collections.singletonList(new LauncherParameterValue("BRANCH",
+				"master")), misfirePolicy, ConcurrencyPolicy.SKIP_IF_ACTIVE, priority, Collections
+				.singletonList(new LauncherAxis("PLATFORM", "linux windows")), null, "PLATFORM=windows", null);
+	}
+}
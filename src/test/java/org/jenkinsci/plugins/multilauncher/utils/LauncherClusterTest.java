@@ -0,0 +1,211 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Two nodes sharing an in-memory H2 database: node <code>a</code> is the {@link LauncherCluster} of this JVM, node
+ * <code>b</code> only talks to the {@link JdbcLeaseStore} as another controller would.
+ */
+public class LauncherClusterTest {
+	private static final AtomicInteger DATABASES = new AtomicInteger();
+
+	private JdbcLeaseStore a;
+
+	private JdbcLeaseStore b;
+
+	private List<LauncherKey> keys;
+
+	/**
+	 * Recent, not to be purged by the heartbeat.
+	 */
+	private long fireTime;
+
+	@Before
+	public void setUp() {
+		// One database per test, kept until the JVM exits even once its connections are closed.
+		String url = "jdbc:h2:mem:leases" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+		a = new JdbcLeaseStore(url, "sa", "");
+		b = new JdbcLeaseStore(url, "sa", "");
+		keys = new ArrayList<LauncherKey>();
+		for (int i = 0; i < 1000; i++) {
+			keys.add(new LauncherKey("folder/project" + i, "launcher" + (i % 3)));
+		}
+		fireTime = System.currentTimeMillis() / 60000 * 60000;
+	}
+
+	@After
+	public void tearDown() {
+		LauncherCluster.configure(null, null);
+		a.close();
+		b.close();
+	}
+
+	@Test
+	public void ringSplitsLaunchersBetweenNodes() {
+		HashRing both = new HashRing(Arrays.asList("b", "a"));
+		HashRing three = new HashRing(Arrays.asList("a", "b", "c"));
+		assertEquals(Arrays.asList("a", "b"), new ArrayList<String>(both.getNodes()));
+		assertNull(new HashRing(Collections.<String> emptySet()).owner(keys.get(0)));
+		int ownedByA = 0;
+		for (LauncherKey key : keys) {
+			String owner = both.owner(key);
+			assertEquals("same owner on every node", owner, new HashRing(Arrays.asList("a", "b")).owner(key));
+			if ("a".equals(owner)) {
+				ownedByA++;
+			} else {
+				assertEquals("b", owner);
+			}
+			// Only the launchers of the node leaving move.
+			if (!"c".equals(three.owner(key))) {
+				assertEquals(three.owner(key), owner);
+			}
+		}
+		assertTrue("a owns " + ownedByA + " of " + keys.size(), ownedByA > 300 && ownedByA < 700);
+	}
+
+	@Test
+	public void leaseTakenOnce() throws Exception {
+		LauncherKey key = keys.get(0);
+		assertTrue(a.claim(key, fireTime, "a"));
+		assertFalse(b.claim(key, fireTime, "b"));
+		assertFalse(a.claim(key, fireTime, "a"));
+		assertTrue("next fire", b.claim(key, fireTime + 60000, "b"));
+		assertTrue("other launcher", b.claim(keys.get(1), fireTime, "b"));
+
+		a.purge(fireTime + 1);
+		assertTrue("purged", b.claim(key, fireTime, "b"));
+		assertFalse("kept", a.claim(key, fireTime + 60000, "a"));
+	}
+
+	@Test
+	public void fireRunsOnceOnItsOwner() throws Exception {
+		b.heartbeat("b", System.currentTimeMillis());
+		LauncherCluster.configure(a, "a");
+		awaitNodes("a", "b");
+
+		HashRing ring = new HashRing(Arrays.asList("a", "b"));
+		for (LauncherKey key : keys) {
+			boolean onB = "b".equals(ring.owner(key)) && b.claim(key, fireTime, "b");
+			boolean onA = LauncherCluster.shouldFire(key, fireTime);
+			assertTrue(key + " fired once", onA ^ onB);
+			assertEquals(key + " fired by its owner", ring.owner(key), onA ? "a" : "b");
+			assertFalse("lease already taken", LauncherCluster.shouldFire(key, fireTime));
+		}
+	}
+
+	@Test
+	public void fireRunsOnceWhileNodesDisagree() throws Exception {
+		b.heartbeat("b", System.currentTimeMillis());
+		LauncherCluster.configure(a, "a");
+		awaitNodes("a", "b");
+
+		// b does not see a yet and takes every fire first: a must not fire again.
+		for (LauncherKey key : keys) {
+			assertTrue(b.claim(key, fireTime, "b"));
+			assertFalse(key.toString(), LauncherCluster.shouldFire(key, fireTime));
+		}
+	}
+
+	@Test
+	public void firesOfLateNodeGoToTheFirstTaker() throws Exception {
+		// b missed its last heartbeat but has not left the ring yet.
+		b.heartbeat("b", System.currentTimeMillis() - LauncherCluster.LATE_AFTER - 5000);
+		LauncherCluster.configure(a, "a");
+		awaitNodes("a", "b");
+
+		HashRing ring = new HashRing(Arrays.asList("a", "b"));
+		int taken = 0;
+		for (LauncherKey key : keys) {
+			if ("b".equals(ring.owner(key))) {
+				if (taken++ % 2 == 0) {
+					// b is still up and takes this one first.
+					assertTrue(b.claim(key, fireTime, "b"));
+					assertFalse(key + " taken by b", LauncherCluster.shouldFire(key, fireTime));
+				} else {
+					assertTrue(key + " taken over", LauncherCluster.shouldFire(key, fireTime));
+					assertFalse(b.claim(key, fireTime, "b"));
+				}
+			}
+		}
+		assertTrue(taken > 0);
+	}
+
+	@Test
+	public void leasesTakenOverWhenNodeLeaves() throws Exception {
+		long now = System.currentTimeMillis();
+		b.heartbeat("b", now);
+		LauncherCluster.configure(a, "a");
+		awaitNodes("a", "b");
+		List<LauncherKey> ofB = new ArrayList<LauncherKey>();
+		for (LauncherKey key : keys) {
+			if (!LauncherCluster.shouldFire(key, fireTime)) {
+				ofB.add(key);
+			}
+		}
+		assertFalse(ofB.isEmpty());
+
+		// b stops: its last heartbeat gets older than the timeout.
+		b.heartbeat("b", now - LauncherCluster.NODE_TIMEOUT - 1000);
+		LauncherCluster.refresh();
+		assertEquals(Collections.singletonList("a"), new ArrayList<String>(LauncherCluster.getNodes()));
+		for (LauncherKey key : ofB) {
+			assertTrue(key + " taken over", LauncherCluster.shouldFire(key, fireTime));
+		}
+
+		// b comes back and gets its launchers again, for the fires not taken yet.
+		b.heartbeat("b", System.currentTimeMillis());
+		LauncherCluster.refresh();
+		assertEquals(Arrays.asList("a", "b"), new ArrayList<String>(LauncherCluster.getNodes()));
+		for (LauncherKey key : ofB) {
+			assertFalse(key + " back to b", LauncherCluster.shouldFire(key, fireTime + 60000));
+			assertTrue(b.claim(key, fireTime + 60000, "b"));
+		}
+	}
+
+	/**
+	 * Wait for the first heartbeat of {@link LauncherCluster#configure}, run by the timer.
+	 */
+	private static void awaitNodes(String... nodes) throws InterruptedException {
+		List<String> expected = Arrays.asList(nodes);
+		for (int i = 0; i < 1000 && !expected.equals(new ArrayList<String>(LauncherCluster.getNodes())); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(expected, new ArrayList<String>(LauncherCluster.getNodes()));
+	}
+}
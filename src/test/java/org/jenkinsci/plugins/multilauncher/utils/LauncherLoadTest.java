@@ -0,0 +1,257 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Queue;
+import hudson.model.StringParameterDefinition;
+import hudson.model.AbstractProject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jenkinsci.plugins.multilauncher.MultiLauncher;
+import org.jenkinsci.plugins.multilauncher.MultiLauncherDescriptor;
+import org.jenkinsci.plugins.multilauncher.data.Launcher;
+import org.jenkinsci.plugins.multilauncher.data.LauncherParameterValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+/**
+ * Projects with launchers, fired by a {@link VirtualClockScheduler} instead of the wall clock: a simulated day runs in
+ * seconds.
+ * 
+ * A plain build runs a small load; the <code>loadtest</code> profile runs thousands of projects. The size of the load
+ * can also be changed with <code>-Dmultilauncher.loadtest.projects=...</code> and
+ * <code>-Dmultilauncher.loadtest.launchers=...</code> (launchers per project).
+ */
+public class LauncherLoadTest {
+	private static final int PROJECTS = Integer.getInteger("multilauncher.loadtest.projects", 200);
+
+	private static final int LAUNCHERS = Integer.getInteger("multilauncher.loadtest.launchers", 2);
+
+	/**
+	 * Longest wall time allowed between the clock reaching a minute and every fire of that minute being in the queue.
+	 */
+	private static final long MAX_LATENCY_MILLIS = Long.getLong("multilauncher.loadtest.maxLatency", 5000);
+
+	private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+	private static final long START = new GregorianCalendar(2015, 0, 5).getTimeInMillis();
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	private VirtualClockScheduler scheduler;
+
+	private final List<FreeStyleProject> projects = new ArrayList<FreeStyleProject>();
+
+	@Before
+	public void setUp() throws Exception {
+		// Fires stay in the queue, which is cleared every simulated hour.
+		j.jenkins.setNumExecutors(0);
+		LauncherTrigger.configure(null, 4, false, 0);
+		// No batching window: a fire is in the queue once the scheduler is idle.
+		FireBatcher.configure(0, 100);
+		scheduler = new VirtualClockScheduler(4, START);
+		LauncherTrigger.useEngine(scheduler);
+
+		for (int p = 0; p < PROJECTS; p++) {
+			FreeStyleProject project = j.createFreeStyleProject("project-" + p);
+			List<ParameterDefinition> definitions = new ArrayList<ParameterDefinition>();
+			definitions.add(new StringParameterDefinition("TARGET", "default", ""));
+			project.addProperty(new ParametersDefinitionProperty(definitions));
+			project.addProperty(new MultiLauncher(launchers(p)));
+			projects.add(project);
+		}
+		LauncherTrigger.updateAll(projects);
+		assertEquals(PROJECTS * LAUNCHERS, scheduler.size());
+	}
+
+	@After
+	public void tearDown() {
+		MultiLauncherDescriptor descriptor = j.jenkins.getDescriptorByType(MultiLauncherDescriptor.class);
+		LauncherTrigger.configure(descriptor.getSchedulerEngine(), descriptor.getSchedulerThreads(),
+				descriptor.isHandOffFires(), descriptor.getFireThreads());
+		LauncherTrigger.resetEngine();
+		FireBatcher.configure(descriptor.getBatchWindow(), descriptor.getMaxBatchSize());
+	}
+
+	/**
+	 * Hourly launchers spread over the minutes of the hour, each with its own parameter value.
+	 */
+	private static List<Launcher> launchers(int project) {
+		List<Launcher> launchers = new ArrayList<Launcher>();
+		for (int l = 0; l < LAUNCHERS; l++) {
+			int minute = (project * LAUNCHERS + l) % 60;
+			launchers.add(new Launcher("0 " + minute + " * * * ?", "launcher-" + l, Collections
+					.singletonList(new LauncherParameterValue("TARGET", "target-" + project + "-" + l))));
+		}
+		return launchers;
+	}
+
+	@Test
+	public void firesEveryLauncherOnTimeOverADay() throws Exception {
+		LauncherMetrics metrics = LauncherMetrics.get();
+		long fires = metrics.getFires();
+		long failed = metrics.getFailedFires();
+		long misfires = metrics.getMisfires();
+
+		List<Long> latencies = simulate(START, START + DAY);
+
+		assertEquals(24L * PROJECTS * LAUNCHERS, metrics.getFires() - fires);
+		assertEquals(0, metrics.getFailedFires() - failed);
+		assertEquals(0, metrics.getMisfires() - misfires);
+
+		Collections.sort(latencies);
+		long p95 = latencies.get(latencies.size() * 95 / 100);
+		long max = latencies.get(latencies.size() - 1);
+		assertTrue("Fire to queue latency of " + max + " ms (95th percentile " + p95 + " ms)",
+				max <= MAX_LATENCY_MILLIS);
+	}
+
+	@Test
+	public void stateDoesNotGrowFromDayToDay() throws Exception {
+		simulate(START, START + DAY);
+		int journal = FireJournal.get().size();
+		int history = FireHistory.get().size();
+		simulate(START + DAY, START + 2 * DAY);
+
+		// One entry per launcher everywhere, whatever the number of fires.
+		assertEquals(PROJECTS * LAUNCHERS, scheduler.size());
+		assertEquals(PROJECTS * LAUNCHERS, FireCalendar.get().size());
+		assertEquals(PROJECTS, ProjectIndex.size());
+		assertTrue(journal >= PROJECTS * LAUNCHERS);
+		assertEquals(journal, FireJournal.get().size());
+		assertTrue(history >= PROJECTS * LAUNCHERS);
+		assertEquals(history, FireHistory.get().size());
+		for (int l = 0; l < LAUNCHERS; l++) {
+			LauncherKey key = new LauncherKey(projects.get(0).getFullName(), "launcher-" + l);
+			assertEquals(FireHistory.SIZE, FireHistory.get().getEntries(key).size());
+		}
+	}
+
+	@Test
+	public void renamesAndDeletesWhileFiring() throws Exception {
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread simulation = new Thread("load test clock") {
+			@Override
+			public void run() {
+				try {
+					simulate(START, START + DAY);
+				} catch (Throwable e) {
+					failure.set(e);
+				}
+			}
+		};
+		simulation.start();
+
+		// A quarter of the projects is renamed, another quarter deleted, while the day goes on.
+		Set<String> renamed = new HashSet<String>();
+		Set<String> deleted = new HashSet<String>();
+		List<FreeStyleProject> remaining = new ArrayList<FreeStyleProject>();
+		for (int p = 0; p < PROJECTS; p++) {
+			FreeStyleProject project = projects.get(p);
+			if (p % 4 == 0) {
+				renamed.add(project.getFullName());
+				project.renameTo("renamed-" + p);
+				remaining.add(project);
+			} else if (p % 4 == 1) {
+				deleted.add(project.getFullName());
+				project.delete();
+			} else {
+				remaining.add(project);
+			}
+		}
+		simulation.join();
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+
+		assertEquals(remaining.size() * LAUNCHERS, scheduler.size());
+		assertEquals(remaining.size() * LAUNCHERS, FireCalendar.get().size());
+		Set<String> gone = new HashSet<String>(renamed);
+		gone.addAll(deleted);
+		for (String name : gone) {
+			for (int l = 0; l < LAUNCHERS; l++) {
+				assertEquals(0, FireCalendar.get().getNextFire(new LauncherKey(name, "launcher-" + l)));
+			}
+		}
+
+		// Once things settled, every remaining launcher fires under its current name, and only those.
+		LauncherMetrics metrics = LauncherMetrics.get();
+		long fires = metrics.getFires();
+		long failed = metrics.getFailedFires();
+		simulate(START + DAY, START + DAY + HOUR);
+
+		assertEquals(remaining.size() * LAUNCHERS, metrics.getFires() - fires);
+		assertEquals(0, metrics.getFailedFires() - failed);
+		Set<String> expected = new HashSet<String>();
+		for (FreeStyleProject project : remaining) {
+			expected.add(project.getFullName());
+		}
+		Set<String> queued = new HashSet<String>();
+		for (Queue.Item item : j.jenkins.getQueue().getItems()) {
+			queued.add(((AbstractProject<?, ?>) item.task).getFullName());
+		}
+		assertEquals(expected, queued);
+	}
+
+	/**
+	 * Move the clock minute by minute from <code>from</code> (excluded) to <code>to</code>, waiting each time for the
+	 * due fires to be in the queue. The queue is cleared at the start of each hour.
+	 * 
+	 * @return wall time in milliseconds each minute took to be in the queue
+	 */
+	private List<Long> simulate(long from, long to) throws InterruptedException {
+		List<Long> latencies = new ArrayList<Long>();
+		for (long time = from + MINUTE; time <= to; time += MINUTE) {
+			if ((time - from) % HOUR == MINUTE) {
+				j.jenkins.getQueue().clear();
+			}
+			long begin = System.nanoTime();
+			scheduler.advanceTo(time);
+			scheduler.awaitIdle(TimeUnit.SECONDS.toMillis(60));
+			latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+		}
+		return latencies;
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2011, Jesse Farinacci
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.multilauncher.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link CronHeapScheduler} reading the time from a clock moved by the test, so that a day of fires runs in seconds.
+ */
+class VirtualClockScheduler extends CronHeapScheduler {
+	private final AtomicLong clock;
+
+	VirtualClockScheduler(int threads, long start) {
+		super(threads);
+		clock = new AtomicLong(start);
+	}
+
+	@Override
+	protected long now() {
+		return clock.get();
+	}
+
+	/**
+	 * Move the clock forward: the fires due by <code>time</code> are dispatched right away.
+	 */
+	void advanceTo(long time) {
+		clock.set(time);
+		wakeUp();
+	}
+
+	/**
+	 * Wait until every fire due at the current time ran.
+	 * 
+	 * @throws AssertionError if they are still running after <code>timeoutMillis</code>
+	 */
+	void awaitIdle(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (!isIdle()) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new AssertionError("Fires due at " + clock.get() + " still running after " + timeoutMillis
+						+ " ms");
+			}
+			Thread.sleep(1);
+		}
+	}
+}